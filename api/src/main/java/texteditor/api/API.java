@@ -4,6 +4,12 @@ import java.util.Locale;
 
 /**
  * The API allows plugins and scripts to access and modify the edited text within the text editor.
+ * <p>
+ * Callbacks are run on a background thread, so that slow plugins do not hold up typing. Within a callback,
+ * the edited text and caret position are read as they were when the callback was called, and edits are
+ * applied together once the callback returns. If the user has changed the text in the meantime, the edits
+ * are moved to follow those changes, or discarded if they overlap them, or if so many changes were made
+ * while the callback ran that they can no longer be followed, which is reported as an error.
  * 
  * @author Rohan Khayech
  */
@@ -54,6 +60,50 @@ public interface API {
      */
     String getBefore(int numChars);
 
+    /**
+     * Returns the character at the specified position.
+     * @param offset The position of the character within the edited text (in characters).
+     * @return The character at the position.
+     * @throws IndexOutOfBoundsException If the position is not within the edited text.
+     */
+    char charAt(int offset);
+
+    /**
+     * Returns a read-only view of the characters between the specified positions, without copying them.
+     * The view is only valid until the edited text is next modified.
+     * @param start The start position (inclusive).
+     * @param end The end position (exclusive).
+     * @return A character sequence containing the characters in the range.
+     * @throws IndexOutOfBoundsException If the range is not within the edited text.
+     */
+    CharSequence charsBetween(int start, int end);
+
+    /**
+     * @return The version of the edited text, which is incremented each time the text is modified.
+     */
+    long getVersion();
+
+    /**
+     * Returns the line containing the specified position.
+     * @param offset The position within the edited text (in characters).
+     * @return The zero-based index of the line containing the position.
+     * @throws IndexOutOfBoundsException If the position is not within the edited text.
+     */
+    int getLineOfOffset(int offset);
+
+    /**
+     * Returns the position of the start of the specified line.
+     * @param line The zero-based index of the line.
+     * @return The position of the first character of the line (in characters).
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    int getLineStart(int line);
+
+    /**
+     * @return The number of lines in the edited text.
+     */
+    int getLineCount();
+
     /**
      * Inserts the specified text after the caret position,
      * and moves the caret to the end of the inserted text.
@@ -89,6 +139,34 @@ public interface API {
      */
     void replaceText(String text, int length);
 
+    /**
+     * Runs the specified edits as a single batch. Edits made through the API within the batch are applied
+     * immediately, so the edited text and caret can be read between them, but the view is only refreshed
+     * once and registered modify callbacks are called once after the batch ends. The batch is undone as a
+     * single step. Batches can be nested, in which case they end with the outermost batch.
+     * @param edits The function making the edits.
+     */
+    void batchEdit(Runnable edits);
+
+    /**
+     * Reverts the most recent change to the edited text. Consecutive keystrokes are undone together,
+     * and each edit made through the API is undone as a single step.
+     * <p>
+     * Cannot be called within a callback whose edits are applied once it returns, as the callback's own
+     * edits would not have been made yet, so an unrelated change would be undone.
+     * @return {@code true} if a change was undone, {@code false} if there was nothing to undo.
+     * @throws IllegalStateException If called within a callback whose edits are applied once it returns.
+     */
+    boolean undo();
+
+    /**
+     * Reapplies the most recently undone change to the edited text.
+     * Like {@link #undo()}, cannot be called within a callback whose edits are applied once it returns.
+     * @return {@code true} if a change was redone, {@code false} if there was nothing to redo.
+     * @throws IllegalStateException If called within a callback whose edits are applied once it returns.
+     */
+    boolean redo();
+
     /**
      * Highlights the text between the specified indexes.
      * @param start The start position of text to highlight.
@@ -103,12 +181,42 @@ public interface API {
     void registerModifyCallback(ModifyEventHandler callback);
 
     /**
-     * Registers a callback function that is called when the user presses a function key.
+     * Registers a callback function that is called with a record of each change to the edited text.
+     * Changes are delivered in order after they are made, once the caret has been updated.
+     * @param callback The function to be called.
+     */
+    void registerChangeCallback(ChangeEventHandler callback);
+
+    /**
+     * Registers a callback function that is called when the user presses a function key
+     * that is not bound to a command.
      * 
      * @param callback The function to be called.
+     * @deprecated Every handler is called for every function key. Use {@link #registerCommand(String, CommandHandler)}
+     *             and {@link #bindFunctionKey(int, String)} instead, so each key press invokes a single command.
      */
+    @Deprecated
     void registerFunctionKeyCallback(FunctionKeyHandler callback);
 
+    /**
+     * Registers a named command, replacing any command already registered with the name.
+     * The user can bind keys to the command in the keymap file, eg. {@code ctrl+f = run "find"}.
+     * 
+     * @param name The unique name of the command.
+     * @param callback The function to be called when the command is invoked.
+     */
+    void registerCommand(String name, CommandHandler callback);
+
+    /**
+     * Binds the specified function key to a command, replacing any command already bound to it.
+     * Bindings in the user's keymap file take precedence.
+     * 
+     * @param keyNum The number of the function key, from 1 to 24.
+     * @param command The name of the command.
+     * @throws IllegalArgumentException If there is no function key with the number.
+     */
+    void bindFunctionKey(int keyNum, String command);
+
     /**
      * Adds a user-selectable option with the given title,
      * and registers a callback function that is called when the option is selected.
@@ -0,0 +1,16 @@
+package texteditor.api;
+
+/**
+ * Event handler receiving a record of each change to the edited text, so that the handler
+ * can update its state incrementally rather than re-reading the full text.
+ * 
+ * @author Rohan Khayech
+ */
+public interface ChangeEventHandler {
+
+    /**
+     * Called for each change to the edited text, in the order the changes were made.
+     * @param change The record of the change.
+     */
+    void onTextChanged(TextChange change);
+}
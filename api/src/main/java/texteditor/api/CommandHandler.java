@@ -0,0 +1,14 @@
+package texteditor.api;
+
+/**
+ * Event handler for named commands, invoked by the keys bound to them.
+ * 
+ * @author Rohan Khayech
+ */
+public interface CommandHandler {
+
+    /**
+     * Called when the command is invoked.
+     */
+    void onCommand();
+}
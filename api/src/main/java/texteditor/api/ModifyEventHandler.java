@@ -2,6 +2,9 @@ package texteditor.api;
 
 /**
  * Event handler for text modification.
+ * <p>
+ * The handler is not told what changed. Handlers that only need to process the changed text should
+ * use a {@link ChangeEventHandler} instead, rather than re-reading the edited text.
  * 
  * @author Rohan Khayech
  */
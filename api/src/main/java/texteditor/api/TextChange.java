@@ -0,0 +1,76 @@
+package texteditor.api;
+
+/**
+ * Record of a single change to the edited text.
+ * 
+ * @author Rohan Khayech
+ */
+public class TextChange {
+
+    /** The position in the edited text where the change occurred. */
+    private final int offset;
+    /** The number of characters removed. */
+    private final int removedLength;
+    /** The text that was inserted. */
+    private final CharSequence insertedText;
+    /** The version of the edited text after the change. */
+    private final long version;
+
+    /**
+     * Constructs a new change record.
+     * @param offset The position in the edited text where the change occurred.
+     * @param removedLength The number of characters removed.
+     * @param insertedText The text that was inserted, which must not be modified afterwards.
+     * @param version The version of the edited text after the change.
+     */
+    public TextChange(int offset, int removedLength, CharSequence insertedText, long version) {
+        this.offset = offset;
+        this.removedLength = removedLength;
+        this.insertedText = insertedText;
+        this.version = version;
+    }
+
+    /**
+     * @return The position in the edited text where the change occurred (in characters).
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The number of characters removed from the offset.
+     */
+    public int getRemovedLength() {
+        return removedLength;
+    }
+
+    /**
+     * @return A read-only sequence containing the text inserted at the offset.
+     */
+    public CharSequence getInsertedText() {
+        return insertedText;
+    }
+
+    /**
+     * @return The number of characters inserted at the offset.
+     */
+    public int getInsertedLength() {
+        return insertedText.length();
+    }
+
+    /**
+     * @return The version of the edited text after the change, which can be compared with
+     *         {@link API#getVersion()} to check whether further changes have been made since.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return A string describing the change.
+     */
+    @Override
+    public String toString() {
+        return String.format("TextChange[offset=%d, removed=%d, inserted=%d, version=%d]", offset, removedLength, insertedText.length(), version);
+    }
+}
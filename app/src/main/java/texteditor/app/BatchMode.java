@@ -0,0 +1,257 @@
+package texteditor.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.python.core.PyCode;
+import org.python.util.PythonInterpreter;
+
+import texteditor.api.Plugin;
+import texteditor.app.controller.FileIO;
+import texteditor.app.controller.HeadlessAPI;
+import texteditor.app.model.Document;
+import texteditor.app.model.Script;
+
+/**
+ * Command line mode that runs plugins and scripts over files without a display.
+ * <p>
+ * Each file is loaded into its own document, with a fresh instance of each plugin and script attached
+ * through a {@link HeadlessAPI}. The loaded text is delivered to their handlers, the requested function
+ * keys, commands and options are replayed in order, and the file is saved if it was modified. Files are processed
+ * in parallel on a fork-join pool.
+ * <pre>
+ * --batch [--plugin &lt;class&gt;]... [--script &lt;file&gt;]... [--key &lt;number&gt;]... [--command &lt;name&gt;]...
+ *         [--option &lt;name&gt;]... [--input &lt;text&gt;]... [--encoding &lt;encoding&gt;] [--output &lt;directory&gt;] [--threads &lt;count&gt;]
+ *         [--locale &lt;tag&gt;] &lt;file&gt;...
+ * </pre>
+ *
+ * @author Rohan Khayech
+ */
+public class BatchMode {
+
+    /** The argument selecting batch mode. */
+    public static final String BATCH_ARG = "--batch";
+
+    /** The current locale. */
+    private Locale locale = Locale.getDefault();
+    /** The resource bundle containing the application's localised strings. */
+    private ResourceBundle bundle;
+    /** The File I/O controller. */
+    private final FileIO fileIO = new FileIO();
+    /** The fully qualified class names of the plugins to run. */
+    private final List<String> plugins = new ArrayList<>();
+    /** The script files to run. */
+    private final List<File> scriptFiles = new ArrayList<>();
+    /** The compiled scripts, in the same order as the script files. */
+    private final List<PyCode> scripts = new ArrayList<>();
+    /** The function key presses, commands and option selections to replay, in order. */
+    private final List<Consumer<HeadlessAPI>> actions = new ArrayList<>();
+    /** The answers given when plugins or scripts prompt for input, in order. */
+    private final List<String> inputs = new ArrayList<>();
+    /** The files to process. */
+    private final List<File> files = new ArrayList<>();
+    /** The encoding of the files. */
+    private String encoding = "UTF-8";
+    /** The directory to save the results to, or {@code null} to overwrite the files. */
+    private File outputDir;
+    /** The number of files to process in parallel. */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Main line of batch mode, which can be run directly without the JavaFX runtime on the module path.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs batch mode with the specified command line arguments.
+     * @param args The command line arguments, including {@value #BATCH_ARG}.
+     * @return The exit status: 0 if all files were processed, 1 if any failed, or 2 if the arguments were invalid.
+     */
+    public static int run(String[] args) {
+        BatchMode batch = new BatchMode();
+        if (!batch.parseArgs(args)) {
+            System.err.println(batch.bundle.getString("batch_usage"));
+            return 2;
+        }
+        if (!batch.checkOutputs()) {
+            return 2;
+        }
+        return batch.processAll();
+    }
+
+    /**
+     * Reads the options and files from the command line arguments.
+     * @param args The command line arguments.
+     * @return {@code true} if the arguments are valid, {@code false} otherwise.
+     */
+    private boolean parseArgs(String[] args) {
+        // Find the locale first, so errors are reported in the right language.
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--locale")) {
+                locale = Locale.forLanguageTag(args[i + 1]);
+            }
+        }
+        bundle = ResourceBundle.getBundle("bundle", locale);
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals(BATCH_ARG)) {
+                    continue;
+                } else if (!arg.startsWith("--")) {
+                    files.add(new File(arg));
+                    continue;
+                } else if (i + 1 == args.length) {
+                    return false;
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--plugin": plugins.add(value); break;
+                    case "--script": scriptFiles.add(new File(value)); break;
+                    case "--key":
+                        int keyNum = Integer.parseInt(value);
+                        actions.add(api -> api.notifyFunctionKeyPress(keyNum));
+                        break;
+                    case "--command": actions.add(api -> api.invokeCommand(value)); break;
+                    case "--option": actions.add(api -> api.selectOption(value)); break;
+                    case "--input": inputs.add(value); break;
+                    case "--encoding": encoding = value; break;
+                    case "--output": outputDir = new File(value); break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    case "--locale": break;
+                    default: return false;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return !files.isEmpty() && threads > 0;
+    }
+
+    /**
+     * Checks that no two files would be saved to the same output file, such as files with the same name
+     * in different directories when an output directory is specified, as they are processed in parallel.
+     * @return {@code true} if every file has its own output file, {@code false} otherwise.
+     */
+    private boolean checkOutputs() {
+        Map<File, File> outputs = new HashMap<>();
+        for (File file : files) {
+            File other = outputs.putIfAbsent(getOutput(file).getAbsoluteFile(), file);
+            if (other != null) {
+                System.err.println(String.format(bundle.getString("batch_same_output"), other, file));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param file The file being processed.
+     * @return The file to save the result of processing the file to.
+     */
+    private File getOutput(File file) {
+        return outputDir != null ? new File(outputDir, file.getName()) : file;
+    }
+
+    /**
+     * Compiles the scripts, then processes all files in parallel, reporting any that fail.
+     * @return The exit status: 0 if all files were processed, 1 otherwise.
+     */
+    private int processAll() {
+        // Compile each script once, rather than once for every file.
+        if (!scriptFiles.isEmpty()) {
+            PythonInterpreter compiler = new PythonInterpreter();
+            try {
+                for (File file : scriptFiles) {
+                    scripts.add(compiler.compile(fileIO.load(file, "UTF-8"), file.getPath()));
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println(String.format(bundle.getString("error_running_script") + " %s", e));
+                return 1;
+            } finally {
+                compiler.close();
+            }
+        }
+
+        AtomicInteger processed = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> files.parallelStream().forEach(file -> {
+                try {
+                    process(file);
+                    processed.incrementAndGet();
+                } catch (Exception e) { // Report the failure and carry on with the other files.
+                    System.err.println(String.format(bundle.getString("batch_failed"), file, e));
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        System.err.println(String.format(bundle.getString("batch_done"), processed.get(), files.size()));
+        return processed.get() == files.size() ? 0 : 1;
+    }
+
+    /**
+     * Runs the plugins and scripts over the specified file, and saves the result if it was modified.
+     * @param file The file to process.
+     * @throws IOException If the file could not be loaded or saved.
+     * @throws ReflectiveOperationException If a plugin could not be loaded.
+     */
+    private void process(File file) throws IOException, ReflectiveOperationException {
+        Document document = new Document();
+        document.setCompact(fileIO.isCompactStorage());
+        HeadlessAPI api = new HeadlessAPI(locale, document);
+        inputs.forEach(api::addUserInput);
+
+        // Start a fresh instance of each plugin and script, as they keep a reference to the API.
+        for (String className : plugins) {
+            Plugin plugin = (Plugin) Class.forName(className).getConstructor().newInstance();
+            plugin.start(api);
+        }
+        List<PythonInterpreter> interpreters = new ArrayList<>();
+        try {
+            for (int i = 0; i < scripts.size(); i++) {
+                // Each file has its own interpreter namespace, so scripts can run in parallel.
+                PythonInterpreter interpreter = new PythonInterpreter();
+                interpreters.add(interpreter);
+                interpreter.set("api", api);
+                interpreter.set("script", new Script(scriptFiles.get(i).getName()));
+                interpreter.exec(scripts.get(i));
+            }
+
+            // Deliver the loaded text to the handlers, then replay the requested actions.
+            api.load(fileIO.open(file, encoding));
+            long loadedVersion = document.getVersion();
+            api.flush();
+            for (Consumer<HeadlessAPI> action : actions) {
+                action.accept(api);
+                api.flush();
+            }
+
+            File output = getOutput(file);
+            if (document.getVersion() != loadedVersion || !output.equals(file)) {
+                fileIO.save(output, document.getText(), encoding);
+            }
+        } finally {
+            interpreters.forEach(PythonInterpreter::close);
+        }
+    }
+}
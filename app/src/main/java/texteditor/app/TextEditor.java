@@ -1,12 +1,19 @@
 package texteditor.app;
 
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.ResourceBundle;
 import javafx.application.Application;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import texteditor.app.controller.APIProvider;
 import texteditor.app.controller.FileIO;
+import texteditor.app.controller.PerformanceMonitor;
 import texteditor.app.controller.PluginManager;
+import texteditor.app.model.CommandRegistry;
+import texteditor.app.model.Document;
+import texteditor.app.model.UndoHistory;
 import texteditor.app.view.GUI;
 import texteditor.app.view.KeyPressHandler;
 
@@ -20,6 +27,8 @@ public class TextEditor extends Application {
 
     /** The current locale. */
     private Locale locale;
+    /** The resource bundle for the current locale. */
+    private ResourceBundle bundle;
     /** The plugin manager. */
     private PluginManager pluginManager;
     /** The keypress handler. */
@@ -30,13 +39,23 @@ public class TextEditor extends Application {
     private GUI ui;
     /** The API provider. */
     private APIProvider api;
+    /** The edited document. */
+    private Document document;
+    /** The undo history of the document. */
+    private UndoHistory history;
+    /** Monitor timing plugins, scripts and file operations. */
+    private PerformanceMonitor monitor;
  
     /**
-     * Main line of the application.
+     * Main line of the application. Runs in batch mode without a GUI if {@value BatchMode#BATCH_ARG} is specified.
      * @param args Command line arguments.
      */
     public static void main(String[] args) {
-        Application.launch(args);
+        if (Arrays.asList(args).contains(BatchMode.BATCH_ARG)) {
+            System.exit(BatchMode.run(args));
+        } else {
+            Application.launch(args);
+        }
     }
 
     /** Starts the text editor application. */
@@ -49,16 +68,59 @@ public class TextEditor extends Application {
         } else {
             locale = Locale.getDefault();
         }
+        bundle = ResourceBundle.getBundle("bundle", locale);
+
+        // Construct the document model.
+        document = new Document();
+        history = new UndoHistory(document);
 
         // Construct controller objects.
-        api = new APIProvider(locale);
+        monitor = new PerformanceMonitor();
+        CommandRegistry commands = new CommandRegistry();
+        api = new APIProvider(locale, document, history, commands, monitor);
         fileIO = new FileIO();
+
+        // Wait for the specified quiet period (in milliseconds) before notifying plugins of modifications, if specified.
+        Duration modifyDelay = getMillisParameter("modify-delay");
+        if (modifyDelay != null) {
+            api.setModifyQuietPeriod(modifyDelay);
+        }
+
+        // Report plugin and script callbacks taking longer than the specified budget (in milliseconds), if specified.
+        Duration handlerBudget = getMillisParameter("handler-budget");
+        if (handlerBudget != null) {
+            monitor.setBudget(handlerBudget);
+        }
+
         pluginManager = new PluginManager(locale, api, fileIO);
-        kpHandler = new KeyPressHandler(api);
+        kpHandler = new KeyPressHandler(api, commands, monitor);
 
         // Display the GUI.
-        ui = new GUI(stage,locale,fileIO,pluginManager,api,kpHandler);
+        ui = new GUI(stage,locale,document,history,fileIO,pluginManager,api,kpHandler,monitor);
         api.setUI(ui);
         ui.display();
     }
+
+    /**
+     * Reads the named application parameter as a number of milliseconds. An invalid value, such as a
+     * malformed or negative number, is reported as a usage error and ignored, so the default is used instead.
+     * @param name The name of the parameter.
+     * @return The duration, or {@code null} if the parameter is not specified or is invalid.
+     */
+    private Duration getMillisParameter(String name) {
+        String value = getParameters().getNamed().get(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            double millis = Double.parseDouble(value);
+            if (Double.isFinite(millis) && millis >= 0) {
+                return Duration.millis(millis);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        System.err.println(String.format(bundle.getString("invalid_millis_parameter"), name, value));
+        return null;
+    }
 }
@@ -1,42 +1,163 @@
 package texteditor.app.controller;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+import javafx.application.Platform;
 import javafx.scene.control.Button;
-import javafx.scene.control.TextArea;
 import javafx.scene.control.TextInputDialog;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.util.Duration;
 
 import texteditor.api.API;
+import texteditor.api.ChangeEventHandler;
+import texteditor.api.CommandHandler;
 import texteditor.api.FunctionKeyHandler;
 import texteditor.api.ModifyEventHandler;
 import texteditor.api.OptionEventHandler;
+import texteditor.api.TextChange;
+import texteditor.app.model.CommandRegistry;
+import texteditor.app.model.Document;
+import texteditor.app.model.Script;
+import texteditor.app.model.UndoHistory;
+import texteditor.app.view.EditorView;
 import texteditor.app.view.GUI;
 
 /**
  * The core application's implementation of the API.
+ * <p>
+ * Plugin and script callbacks are run on a worker thread, so that slow callbacks do not hold up the UI.
+ * Each callback reads from a snapshot of the document taken when it was scheduled, along with its own edits,
+ * which are recorded in an {@link EditBatch} that is applied on the JavaFX application thread once the callback
+ * returns, or rejected if it conflicts with changes made since the snapshot, or if too many changes have
+ * been made since the snapshot to rebase the edits over them. The API may also be used
+ * from the JavaFX application thread, where edits are applied immediately, or from any other thread,
+ * in which case each call is run on the JavaFX application thread.
+ * <p>
+ * While a macro is being recorded, the caret-relative edit calls made on the JavaFX application thread,
+ * such as those made by key mappings, are recorded, along with those made by callbacks the user invoked.
+ * The calls made by modify and change event callbacks are not recorded, as they are made again in
+ * response to the edits when the macro is replayed.
+ * <p>
+ * While a file is loading into the document, edits made through the API are ignored, including those made
+ * by callbacks, key mappings and macro replays, as the rest of the file is still being appended.
  * 
  * @author Rohan Khayech
  */
 public class APIProvider implements API {
 
+    /**
+     * A callback registered by a plugin or script.
+     * @param <T> The type of the callback.
+     */
+    private static class Registration<T> {
+        /** The callback function. */
+        private final T callback;
+        /** The plugin or script that registered the callback, or {@code null} if unknown. */
+        private final Object owner;
+
+        /**
+         * Constructs a new registration.
+         * @param callback The callback function.
+         * @param owner The plugin or script that registered the callback, or {@code null} if unknown.
+         */
+        private Registration(T callback, Object owner) {
+            this.callback = callback;
+            this.owner = owner;
+        }
+    }
+
     /** Back-reference to the UI. */
     private GUI ui;
     /** The current locale. */
     private Locale locale;
-    /** The text area containing the editable text. */
-    private TextArea textArea;
+    /** The document containing the edited text. */
+    private Document document;
+    /** The undo history of the document. */
+    private UndoHistory history;
+    /** The editor view displaying the edited text. */
+    private EditorView view;
     /** List of handlers for text modification. */
-    private List<ModifyEventHandler> modifyEventHandlers = new LinkedList<>();
+    private List<Registration<ModifyEventHandler>> modifyEventHandlers = new CopyOnWriteArrayList<>();
+    /** List of handlers receiving each change to the text. */
+    private List<Registration<ChangeEventHandler>> changeEventHandlers = new CopyOnWriteArrayList<>();
+    /** Changes that have not yet been delivered to the change handlers. */
+    private List<TextChange> pendingChanges = new ArrayList<>();
+    /** The position and lengths of the most recent changes to the text, used to rebase edits made by callbacks. */
+    private Deque<EditBatch.Change> recentChanges = new ArrayDeque<>();
     /** List of handlers for function key presses. */
-    private List<FunctionKeyHandler> functionKeyHandlers = new LinkedList<>();
+    private List<Registration<FunctionKeyHandler>> functionKeyHandlers = new CopyOnWriteArrayList<>();
+    /** Registry of the commands added by plugins and scripts. */
+    private CommandRegistry commands;
+    /** Monitor timing each plugin and script's callbacks. */
+    private PerformanceMonitor monitor;
+    /** The plugin or script currently being loaded, which owns any callbacks registered. */
+    private volatile Object loadingOwner;
+    /** The thread running plugin and script callbacks. */
+    private ExecutorService callbackExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Plugin worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** The edit batch of the callback running on the current thread, if any. */
+    private ThreadLocal<EditBatch> callbackBatch = new ThreadLocal<>();
+    /** Dispatcher coalescing modify events. */
+    private ModifyEventDispatcher modifyDispatcher = new ModifyEventDispatcher(this::notifyModifyEvent);
+    /** The number of nested batch edits in progress. */
+    private int batchDepth = 0;
+    /** Whether the edited text was modified during the current batch edit. */
+    private boolean modifiedInBatch = false;
+    /** The macro being recorded, or {@code null} if not recording. */
+    private Macro recording;
+    /** Whether a macro is being replayed, in which case its edits are not recorded again. */
+    private boolean replaying = false;
+    /** Whether a file is loading into the document, during which edits are ignored. */
+    private boolean loading = false;
+
+    /** The number of recent changes kept for rebasing edits made by callbacks. */
+    private static final int RECENT_CHANGE_LIMIT = 1024;
     
     /** 
      * Constructs an instance of the API implementation.
      * @param locale The current locale.
+     * @param document The document containing the edited text.
+     * @param history The undo history of the document.
+     * @param commands Registry of the commands added by plugins and scripts.
+     * @param monitor Monitor timing each plugin and script's callbacks.
      */
-    public APIProvider(Locale locale) {
+    public APIProvider(Locale locale, Document document, UndoHistory history, CommandRegistry commands, PerformanceMonitor monitor) {
         this.locale = locale;
+        this.document = document;
+        this.history = history;
+        this.commands = commands;
+        this.monitor = monitor;
+
+        // Notify text modification handlers when text modified, once per batch edit.
+        document.addListener((offset, removedText, insertedText) -> {
+            // Only the lengths are kept for rebasing, so large insertions are not held on to.
+            recentChanges.addLast(new EditBatch.Change(offset, removedText.length(), insertedText.length(), document.getVersion()));
+            if (recentChanges.size() > RECENT_CHANGE_LIMIT) {
+                recentChanges.removeFirst();
+            }
+            if (!changeEventHandlers.isEmpty()) {
+                pendingChanges.add(new TextChange(offset, removedText.length(), insertedText, document.getVersion()));
+            }
+            if (batchDepth > 0) {
+                modifiedInBatch = true;
+            } else {
+                //This must run after caret position is updated to allow API calls to get the correct postion.
+                //Hence notifying on the next pulse, which also coalesces changes made in quick succession.
+                modifyDispatcher.schedule();
+            }
+        });
     }
 
     /**
@@ -45,7 +166,46 @@ public class APIProvider implements API {
      */
     public void setUI(GUI ui) {
         this.ui = ui;
-        this.textArea = ui.getTextArea();
+        this.view = ui.getEditorView();
+    }
+
+    /**
+     * @return Registry of the commands added by plugins and scripts.
+     */
+    public CommandRegistry getCommands() {
+        return commands;
+    }
+
+    /**
+     * Sets the plugin or script currently being loaded, to which any callbacks registered are attributed.
+     * @param owner The plugin or script, or {@code null} once it has loaded.
+     */
+    public void setLoadingOwner(Object owner) {
+        this.loadingOwner = owner;
+    }
+
+    /**
+     * Sets whether a file is loading into the document. While loading, edits made through the API are
+     * ignored. Must be called on the JavaFX application thread.
+     * @param loading {@code true} while a file is loading.
+     */
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+    }
+
+    /**
+     * @return {@code true} if a file is loading into the document, {@code false} otherwise.
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Sets how long to wait after the text is modified before notifying the modify and change event handlers.
+     * @param quietPeriod The time to wait after the last change, or {@link Duration#ZERO} to notify once on the next animation pulse.
+     */
+    public void setModifyQuietPeriod(Duration quietPeriod) {
+        modifyDispatcher.setQuietPeriod(quietPeriod);
     }
 
     /**
@@ -61,7 +221,7 @@ public class APIProvider implements API {
      */
     @Override
     public String getText() {
-        return textArea.getText();
+        return text().getText();
     }
 
     /**
@@ -71,7 +231,23 @@ public class APIProvider implements API {
      */
     @Override
     public void setText(String text) {
-        textArea.setText(text);
+        EditBatch batch = callbackBatch.get();
+        if (batch != null) {
+            batch.replace(0, batch.getDocument().length(), text);
+            return;
+        }
+        onApplicationThread(() -> {
+            if (loading) {
+                return null;
+            }
+            history.beginCompound();
+            try {
+                document.setText(text);
+            } finally {
+                history.endCompound();
+            }
+            return null;
+        });
     }
 
     /**
@@ -79,7 +255,11 @@ public class APIProvider implements API {
      */
     @Override
     public int getCaretPosition() {
-        return textArea.getCaretPosition();
+        EditBatch batch = callbackBatch.get();
+        if (batch != null) {
+            return batch.getCaretPosition();
+        }
+        return onApplicationThread(view::getCaretPosition);
     }
 
     /**
@@ -87,8 +267,9 @@ public class APIProvider implements API {
      */
     @Override
     public String getAfter() {
-        if (getCaretPosition() < textArea.getLength()) {
-            return textArea.getText(getCaretPosition(),textArea.getLength());
+        Document document = text();
+        if (getCaretPosition() < document.length()) {
+            return document.getText(getCaretPosition(),document.length());
         } else {
             return "";
         }
@@ -102,10 +283,11 @@ public class APIProvider implements API {
      */
     @Override
     public String getAfter(int numChars) {
+        Document document = text();
         if (numChars > 0) {
             int end = getCaretPosition()+numChars;
-            if (end <= textArea.getLength()) {
-                return textArea.getText(getCaretPosition(), end);
+            if (end <= document.length()) {
+                return document.getText(getCaretPosition(), end);
             } else {
                 return getAfter();
             }
@@ -119,8 +301,9 @@ public class APIProvider implements API {
      */
     @Override
     public String getBefore() {
+        Document document = text();
         if (getCaretPosition() > 0) {
-            return textArea.getText(0,getCaretPosition());
+            return document.getText(0,getCaretPosition());
         } else {
             return "";
         }
@@ -134,10 +317,11 @@ public class APIProvider implements API {
      */
     @Override
     public String getBefore(int numChars) {
+        Document document = text();
         if (numChars > 0) {
             int start = getCaretPosition()-numChars;
             if (start > 0) {
-                return textArea.getText(start,getCaretPosition());
+                return document.getText(start,getCaretPosition());
                 
             } else {
                 return getBefore();
@@ -147,6 +331,72 @@ public class APIProvider implements API {
         }
     }
 
+    /**
+     * Returns the character at the specified position.
+     * 
+     * @param offset The position of the character within the edited text (in characters).
+     * @return The character at the position.
+     * @throws IndexOutOfBoundsException If the position is not within the edited text.
+     */
+    @Override
+    public char charAt(int offset) {
+        return text().charAt(offset);
+    }
+
+    /**
+     * Returns a read-only view of the characters between the specified positions, without copying them.
+     * The view is only valid until the edited text is next modified.
+     * 
+     * @param start The start position (inclusive).
+     * @param end The end position (exclusive).
+     * @return A character sequence containing the characters in the range.
+     * @throws IndexOutOfBoundsException If the range is not within the edited text.
+     */
+    @Override
+    public CharSequence charsBetween(int start, int end) {
+        return text().subSequence(start, end);
+    }
+
+    /**
+     * @return The version of the edited text, which is incremented each time the text is modified.
+     */
+    @Override
+    public long getVersion() {
+        return text().getVersion();
+    }
+
+    /**
+     * Returns the line containing the specified position.
+     * 
+     * @param offset The position within the edited text (in characters).
+     * @return The zero-based index of the line containing the position.
+     * @throws IndexOutOfBoundsException If the position is not within the edited text.
+     */
+    @Override
+    public int getLineOfOffset(int offset) {
+        return text().getLineOfOffset(offset);
+    }
+
+    /**
+     * Returns the position of the start of the specified line.
+     * 
+     * @param line The zero-based index of the line.
+     * @return The position of the first character of the line (in characters).
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    @Override
+    public int getLineStart(int line) {
+        return text().getLineStart(line);
+    }
+
+    /**
+     * @return The number of lines in the edited text.
+     */
+    @Override
+    public int getLineCount() {
+        return text().getLineCount();
+    }
+
     /**
      * Inserts the specified text after the caret position, and moves the caret to
      * the end of the inserted text.
@@ -154,8 +404,9 @@ public class APIProvider implements API {
      */
     @Override
     public void insertText(String text) {
+        record(Macro.Operation.INSERT_TEXT, text, 0);
         int caret = getCaretPosition();
-        textArea.insertText(caret, text);
+        replace(caret, caret, text);
     }
 
     /**
@@ -164,13 +415,15 @@ public class APIProvider implements API {
      */
     @Override
     public void insertTextAtSOL(String text) {
+        record(Macro.Operation.INSERT_TEXT_AT_SOL, text, 0);
         int caret = getCaretPosition();
         
-        textArea.insertText(getSOL(), text);
+        int sol = getSOL();
+        replace(sol, sol, text);
         
         //Move caret appropriately
         int newCaret = caret + text.length();
-        textArea.selectRange(newCaret, newCaret);
+        moveCaret(newCaret);
     }
 
     /**
@@ -179,12 +432,14 @@ public class APIProvider implements API {
      */
     @Override
     public void removeTextAtSOL(String text) {
+        record(Macro.Operation.REMOVE_TEXT_AT_SOL, text, 0);
+        Document document = text();
         int sol = getSOL();
         int caret = getCaretPosition();
 
-        if (sol+text.length()<=textArea.getLength()) {
-            if (textArea.getText(sol, sol+text.length()).equals(text)) {
-                textArea.replaceText(sol, sol+text.length(),"");
+        if (sol+text.length()<=document.length()) {
+            if (document.getText(sol, sol+text.length()).equals(text)) {
+                replace(sol, sol+text.length(), "");
 
                 int newCaret;
                 if (caret-text.length() > sol) {
@@ -192,7 +447,7 @@ public class APIProvider implements API {
                 } else {
                     newCaret = sol;
                 }
-                textArea.selectRange(newCaret, newCaret);
+                moveCaret(newCaret);
             }
         }
     }
@@ -203,11 +458,12 @@ public class APIProvider implements API {
      */
     @Override
     public void removeTextBeforeCaret(String text) {
+        record(Macro.Operation.REMOVE_TEXT_BEFORE_CARET, text, 0);
         int caret = getCaretPosition();
         int start = caret-text.length();
         if (start>=0) {
-            if (textArea.getText(start, caret).equals(text)) {
-                textArea.replaceText(start, caret, "");
+            if (text().getText(start, caret).equals(text)) {
+                replace(start, caret, "");
             }
         }
     }
@@ -219,12 +475,177 @@ public class APIProvider implements API {
      */
     @Override
     public void replaceText(String text, int length) {
+        record(Macro.Operation.REPLACE_TEXT, text, length);
         int start = getCaretPosition()-length;
         if (start >= 0) {
-            textArea.replaceText(start, getCaretPosition(), text);
+            replace(start, getCaretPosition(), text);
+        } else {
+            replace(0, getCaretPosition(), text);
+        }
+    }
+
+    /**
+     * Runs the specified edits as a single batch. The edits are applied to the document as they are made,
+     * but the view is refreshed once, a single modify event is sent, and the edits are undone as a single step.
+     * Within a callback, the edits are already batched, so are simply run.
+     * @param edits The function making the edits.
+     */
+    @Override
+    public void batchEdit(Runnable edits) {
+        if (callbackBatch.get() != null) {
+            edits.run();
+        } else if (Platform.isFxApplicationThread()) {
+            applyBatchEdit(edits);
         } else {
-            textArea.replaceText(0, getCaretPosition(), text);
+            onApplicationThread(() -> {
+                applyBatchEdit(edits);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Runs the specified edits as a single batch on the JavaFX application thread.
+     * @param edits The function making the edits.
+     */
+    private void applyBatchEdit(Runnable edits) {
+        history.beginCompound();
+        view.beginUpdate();
+        batchDepth++;
+        try {
+            edits.run();
+        } finally {
+            batchDepth--;
+            view.endUpdate();
+            history.endCompound();
+            if (batchDepth == 0 && modifiedInBatch) {
+                modifiedInBatch = false;
+                modifyDispatcher.schedule();
+            }
+        }
+    }
+
+    /**
+     * Starts recording a macro, discarding any macro already being recorded.
+     * Must be called on the JavaFX application thread.
+     */
+    public void startRecording() {
+        recording = new Macro();
+    }
+
+    /**
+     * Stops recording the macro. Must be called on the JavaFX application thread.
+     * @return The recorded macro, or {@code null} if no macro was being recorded.
+     */
+    public Macro stopRecording() {
+        Macro macro = recording;
+        recording = null;
+        return macro;
+    }
+
+    /**
+     * @return {@code true} if a macro is being recorded, {@code false} otherwise.
+     */
+    public boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Replays the specified macro a number of times from the caret position, as a single batch edit.
+     * Must be called on the JavaFX application thread.
+     * @param macro The macro to replay.
+     * @param times The number of times to replay the macro.
+     */
+    public void replayMacro(Macro macro, int times) {
+        replay(() -> {
+            for (int i = 0; i < times; i++) {
+                macro.replay(this);
+            }
+        });
+    }
+
+    /**
+     * Replays the specified macro once from the start of each line between the specified positions,
+     * as a single batch edit. A line starting at the end position is not included, unless it is the only line.
+     * Must be called on the JavaFX application thread.
+     * @param macro The macro to replay.
+     * @param start The start position of the range of lines.
+     * @param end The end position of the range of lines.
+     */
+    public void replayMacroOnLines(Macro macro, int start, int end) {
+        int firstLine = document.getLineOfOffset(start);
+        int lastLine = document.getLineOfOffset(end);
+        if (lastLine > firstLine && document.getLineStart(lastLine) == end) {
+            lastLine--;
+        }
+        int last = lastLine;
+        replay(() -> {
+            // Work upwards, so the edits to each line do not move the start of the lines still to be replayed.
+            for (int line = last; line >= firstLine; line--) {
+                view.positionCaret(document.getLineStart(line));
+                macro.replay(this);
+            }
+        });
+    }
+
+    /**
+     * Replays macros as a single batch edit, without recording their edits. Does nothing while a file is loading.
+     * @param edits The function replaying the macros.
+     */
+    private void replay(Runnable edits) {
+        if (loading) {
+            return;
+        }
+        replaying = true;
+        try {
+            applyBatchEdit(edits);
+        } finally {
+            replaying = false;
+        }
+    }
+
+    /**
+     * Reverts the most recent change to the edited text, and moves the caret to the restored text.
+     * @return {@code true} if a change was undone, {@code false} if there was nothing to undo.
+     * @throws IllegalStateException If called within a callback, as its edits have not been applied yet.
+     */
+    @Override
+    public boolean undo() {
+        if (callbackBatch.get() != null) {
+            throw new IllegalStateException("Cannot undo within a callback");
         }
+        return onApplicationThread(() -> {
+            if (loading) {
+                return false;
+            }
+            int pos = history.undo();
+            if (pos >= 0) {
+                view.positionCaret(pos);
+            }
+            return pos >= 0;
+        });
+    }
+
+    /**
+     * Reapplies the most recently undone change to the edited text, and moves the caret to the reinserted text.
+     * @return {@code true} if a change was redone, {@code false} if there was nothing to redo.
+     * @throws IllegalStateException If called within a callback, as its edits have not been applied yet.
+     */
+    @Override
+    public boolean redo() {
+        if (callbackBatch.get() != null) {
+            throw new IllegalStateException("Cannot redo within a callback");
+        }
+        return onApplicationThread(() -> {
+            if (loading) {
+                return false;
+            }
+            int pos = history.redo();
+            if (pos >= 0) {
+                view.positionCaret(pos);
+            }
+            return pos >= 0;
+        });
     }
 
     /**
@@ -235,7 +656,15 @@ public class APIProvider implements API {
      */
     @Override
     public void highlightText(int start, int end) {
-        textArea.selectRange(start, end);   
+        EditBatch batch = callbackBatch.get();
+        if (batch != null) {
+            batch.select(start, end);
+        } else {
+            onApplicationThread(() -> {
+                view.selectRange(start, end);
+                return null;
+            });
+        }
     }
 
     /**
@@ -244,17 +673,61 @@ public class APIProvider implements API {
      */
     @Override
     public void registerModifyCallback(ModifyEventHandler callback) {
-        modifyEventHandlers.add(callback);
+        modifyEventHandlers.add(new Registration<>(callback, loadingOwner));
     }
 
     /**
-     * Registers a callback function that is called when the user presses a function key.
+     * Registers a callback function that is called with a record of each change to the edited text.
+     * @param callback The function to be called.
+     */
+    @Override
+    public void registerChangeCallback(ChangeEventHandler callback) {
+        changeEventHandlers.add(new Registration<>(callback, loadingOwner));
+    }
+
+    /**
+     * Registers a callback function that is called when the user presses a function key
+     * that is not bound to a command.
      * 
      * @param callback The function to be called.
+     * @deprecated Use {@link #registerCommand(String, CommandHandler)} and {@link #bindFunctionKey(int, String)}.
      */
+    @Deprecated
     @Override
     public void registerFunctionKeyCallback(FunctionKeyHandler callback) {
-        functionKeyHandlers.add(callback);
+        functionKeyHandlers.add(new Registration<>(callback, loadingOwner));
+    }
+
+    /**
+     * Registers a named command, replacing any command already registered with the name.
+     * The command's callback is run on the worker thread, like other callbacks.
+     * 
+     * @param name The unique name of the command.
+     * @param callback The function to be called when the command is invoked.
+     */
+    @Override
+    public void registerCommand(String name, CommandHandler callback) {
+        Registration<Runnable> registration = new Registration<>(callback::onCommand, loadingOwner);
+        onApplicationThread(() -> {
+            commands.register(name, () -> runCallbacks("command", List.of(registration), true));
+            return null;
+        });
+    }
+
+    /**
+     * Binds the specified function key to a command, replacing any command already bound to it.
+     * 
+     * @param keyNum The number of the function key, from 1 to 24.
+     * @param command The name of the command.
+     * @throws IllegalArgumentException If there is no function key with the number.
+     */
+    @Override
+    public void bindFunctionKey(int keyNum, String command) {
+        KeyCodeCombination key = CommandRegistry.functionKey(keyNum);
+        onApplicationThread(() -> {
+            commands.bind(key, command);
+            return null;
+        });
     }
 
     /**
@@ -266,9 +739,13 @@ public class APIProvider implements API {
      */
     @Override
     public void addOption(String name, OptionEventHandler callback) {
-        Button button = new Button(name);
-        button.setOnAction(event -> callback.onOptionSelected());
-        ui.getToolBar().getItems().add(button);
+        Registration<Runnable> registration = new Registration<>(callback::onOptionSelected, loadingOwner);
+        onApplicationThread(() -> {
+            Button button = new Button(name);
+            button.setOnAction(event -> runCallbacks("option", List.of(registration), true));
+            ui.getToolBar().getItems().add(button);
+            return null;
+        });
     }
 
     /**
@@ -279,40 +756,263 @@ public class APIProvider implements API {
      */
     @Override
     public String getUserInput(String title, String prompt) {
-        var dialog = new TextInputDialog();
-        dialog.setTitle(title);
-        dialog.setHeaderText(prompt);
+        return onApplicationThread(() -> {
+            var dialog = new TextInputDialog();
+            dialog.setTitle(title);
+            dialog.setHeaderText(prompt);
 
-        return dialog.showAndWait().orElse(null);
+            return dialog.showAndWait().orElse(null);
+        });
     }
 
     /**
      * Notifies all function key press handlers that the specified function key was pressed.
+     * Only used for function keys that are not bound to a command.
      * 
      * @param keyNum The number of the function key that was pressed.
      */
     public void notifyFunctionKeyPress(int keyNum) {
-        for (FunctionKeyHandler handler : functionKeyHandlers) {
-            handler.onKeyPressed(keyNum);
+        List<Registration<Runnable>> callbacks = new ArrayList<>();
+        for (Registration<FunctionKeyHandler> handler : functionKeyHandlers) {
+            callbacks.add(new Registration<>(() -> handler.callback.onKeyPressed(keyNum), handler.owner));
         }
+        runCallbacks("function key", callbacks, true);
     }
 
     /**
-     * Notifies all modify event handlers that the edited text was modified.
+     * Delivers any pending changes to the change event handlers,
+     * then notifies all modify event handlers that the edited text was modified.
      */
     public void notifyModifyEvent() {
-        for (ModifyEventHandler handler : modifyEventHandlers) {
-            handler.onTextModified();
+        List<Registration<Runnable>> callbacks = new ArrayList<>();
+        if (!pendingChanges.isEmpty()) {
+            List<TextChange> changes = pendingChanges;
+            pendingChanges = new ArrayList<>();
+            for (TextChange change : changes) {
+                for (Registration<ChangeEventHandler> handler : changeEventHandlers) {
+                    callbacks.add(new Registration<>(() -> handler.callback.onTextChanged(change), handler.owner));
+                }
+            }
+        }
+        for (Registration<ModifyEventHandler> handler : modifyEventHandlers) {
+            callbacks.add(new Registration<>(handler.callback::onTextModified, handler.owner));
         }
+        runCallbacks("modify", callbacks, false);
     }
 
     /**
-     * Gets the index of the start of the current line, by finding the last {@code \n} character 
-     * or the start of file if one is not found.
+     * Runs the specified callbacks in order on the worker thread, against a snapshot of the document
+     * taken now, timing each against its owner's histogram. Must be called on the JavaFX application thread.
+     * A flight recorder event is recorded for each notification.
+     * @param notification The kind of notification, eg. modify.
+     * @param callbacks The callbacks to run.
+     * @param invokedByUser Whether the user invoked the callbacks, so their edits are recorded in any macro being recorded.
+     */
+    private void runCallbacks(String notification, List<Registration<Runnable>> callbacks, boolean invokedByUser) {
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        boolean record = invokedByUser && recording != null;
+        Document snapshot = document.snapshot();
+        int caret = view.getCaretPosition();
+        callbackExecutor.execute(() -> {
+            CallbackFanOutEvent event = new CallbackFanOutEvent();
+            event.begin();
+            int batches = 0;
+            for (Registration<Runnable> callback : callbacks) {
+                // Each callback sees the snapshot, rather than the edits of the callbacks before it.
+                EditBatch batch = new EditBatch(snapshot, caret);
+                if (record) {
+                    batch.setMacro(new Macro());
+                }
+                callbackBatch.set(batch);
+                long start = System.nanoTime();
+                try {
+                    callback.callback.run();
+                } catch (RuntimeException e) {
+                    // A failing plugin must not stop the others from being notified.
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    continue;
+                } finally {
+                    callbackBatch.remove();
+                    if (callback.owner != null) {
+                        monitor.record(callback.owner, System.nanoTime() - start);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches++;
+                    Platform.runLater(() -> applyBatch(batch, callback.owner));
+                }
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.set(notification, callbacks.size(), snapshot.getVersion(), batches);
+                event.commit();
+            }
+        });
+    }
+
+    /**
+     * Applies the edits made by a callback to the document, rebasing them over any changes made since
+     * the callback's snapshot was taken. The edits are discarded if they conflict with those changes,
+     * or if a file is loading.
+     * <p>
+     * The edits are also discarded if more than {@value #RECENT_CHANGE_LIMIT} changes were made since
+     * the snapshot, as the earliest of them are no longer known. This is reported as an
+     * {@link IllegalStateException} to the thread's uncaught exception handler, like a failing callback.
+     * <p>
+     * The callback's edit calls are added to the macro being recorded, if any, only if the edits are applied.
+     * Must be called on the JavaFX application thread.
+     * @param batch The edits made by the callback.
+     * @param owner The plugin or script that made the edits, or {@code null} if unknown.
+     */
+    private void applyBatch(EditBatch batch, Object owner) {
+        if (loading) {
+            return;
+        }
+        List<EditBatch.Change> changes = getChangesSince(batch.getVersion());
+        if (changes == null) {
+            String source = owner == null ? "a callback" : owner instanceof Script ? owner.toString() : owner.getClass().getName();
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, new IllegalStateException(String.format(
+                    "Discarded the edits made by %s, as more than %d changes were made while it ran", source, RECENT_CHANGE_LIMIT)));
+            return;
+        }
+        applyBatchEdit(() -> {
+            if (batch.apply(changes, document, view) && batch.getMacro() != null && recording != null) {
+                recording.addAll(batch.getMacro());
+            }
+        });
+    }
+
+    /**
+     * Returns the changes made to the document after the specified version.
+     * @param version The version of the document.
+     * @return The changes made since the version in order, or {@code null} if they are no longer known.
+     */
+    private List<EditBatch.Change> getChangesSince(long version) {
+        List<EditBatch.Change> changes = new ArrayList<>();
+        for (EditBatch.Change change : recentChanges) {
+            if (change.getVersion() > version) {
+                changes.add(change);
+            }
+        }
+        long expected = document.getVersion() - version;
+        return changes.size() == expected ? changes : null;
+    }
+
+    /**
+     * Records a caret-relative edit call in the current callback's macro, if it is being recorded, or in the
+     * macro being recorded if called on the JavaFX application thread outside of a macro replay.
+     * @param operation The edit call.
+     * @param text The text passed to the call.
+     * @param length The length passed to the call, or 0 if it takes no length.
+     */
+    private void record(Macro.Operation operation, String text, int length) {
+        EditBatch batch = callbackBatch.get();
+        if (batch != null) {
+            if (batch.getMacro() != null) {
+                batch.getMacro().add(operation, text, length);
+            }
+        } else if (Platform.isFxApplicationThread() && recording != null && !replaying) {
+            recording.add(operation, text, length);
+        }
+    }
+
+    /**
+     * Replaces the text between the specified positions, and moves the caret to the end of the inserted text.
+     * The change is recorded as its own undo step, rather than being merged with the user's typing.
+     * Within a callback, the change is recorded in the callback's batch instead.
+     * @param start The start position (inclusive).
+     * @param end The end position (exclusive).
+     * @param text The text to insert.
+     */
+    private void replace(int start, int end, String text) {
+        EditBatch batch = callbackBatch.get();
+        if (batch != null) {
+            batch.replace(start, end, text);
+            return;
+        }
+        onApplicationThread(() -> {
+            if (loading) {
+                return null;
+            }
+            history.beginCompound();
+            try {
+                document.replace(start, end, text);
+            } finally {
+                history.endCompound();
+            }
+            view.positionCaret(start + text.length());
+            return null;
+        });
+    }
+
+    /**
+     * Moves the caret to the specified position, or records the move in the current callback's batch.
+     * @param pos The position to move the caret to.
+     */
+    private void moveCaret(int pos) {
+        EditBatch batch = callbackBatch.get();
+        if (batch != null) {
+            batch.moveCaret(pos);
+        } else {
+            onApplicationThread(() -> {
+                view.positionCaret(pos);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Gets the index of the start of the current line from the document's line index.
      * @return The index of the start of the current line, or 0 if on the first line.
      */
     private int getSOL() {
-        String text = getBefore();
-        return text.lastIndexOf("\n")+1;
+        Document document = text();
+        return document.getLineStart(document.getLineOfOffset(getCaretPosition()));
+    }
+
+    /**
+     * Returns the document to read the edited text from. Within a callback, this is the callback's snapshot
+     * with the callback's own edits applied.
+     * On the JavaFX application thread, this is the document itself. On any other thread, a new snapshot is taken.
+     * @return The document to read from.
+     */
+    private Document text() {
+        EditBatch batch = callbackBatch.get();
+        if (batch != null) {
+            return batch.getDocument();
+        } else if (Platform.isFxApplicationThread()) {
+            return document;
+        }
+        return onApplicationThread(document::snapshot);
+    }
+
+    /**
+     * Runs the specified action on the JavaFX application thread, waiting for it to complete.
+     * If already on the JavaFX application thread, the action is run immediately.
+     * @param <T> The type of the action's result.
+     * @param action The action to run.
+     * @return The result of the action.
+     */
+    private <T> T onApplicationThread(Supplier<T> action) {
+        if (Platform.isFxApplicationThread()) {
+            return action.get();
+        }
+        FutureTask<T> task = new FutureTask<>(action::get);
+        Platform.runLater(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package texteditor.app.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event recording a notification being delivered to the callbacks of plugins and scripts.
+ * Emitted for every notification, so stack traces are not recorded to keep it cheap.
+ *
+ * @author Rohan Khayech
+ */
+@Name("texteditor.CallbackFanOut")
+@Label("Callback Fan-out")
+@Category({"Text Editor", "Plugins"})
+@StackTrace(false)
+@Description("Plugin and script callbacks were run on the worker thread for a notification")
+public class CallbackFanOutEvent extends Event {
+
+    /** The kind of notification, eg. modify. */
+    @Label("Notification")
+    private String notification;
+
+    /** The number of callbacks run. */
+    @Label("Callbacks")
+    private int callbacks;
+
+    /** The version of the document snapshot read by the callbacks. */
+    @Label("Document Version")
+    private long version;
+
+    /** The number of callbacks that made edits. */
+    @Label("Edit Batches")
+    private int batches;
+
+    /**
+     * Sets the details of the notification.
+     * @param notification The kind of notification, eg. modify.
+     * @param callbacks The number of callbacks run.
+     * @param version The version of the document snapshot read by the callbacks.
+     * @param batches The number of callbacks that made edits.
+     */
+    public void set(String notification, int callbacks, long version, int batches) {
+        this.notification = notification;
+        this.callbacks = callbacks;
+        this.version = version;
+        this.batches = batches;
+    }
+}
@@ -0,0 +1,279 @@
+package texteditor.app.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import texteditor.app.model.Document;
+import texteditor.app.view.EditorView;
+
+/**
+ * The context of a plugin callback running off the JavaFX application thread.
+ * <p>
+ * The callback reads from an immutable snapshot of the document, taken along with the caret position
+ * when the callback was scheduled. Edits made by the callback are applied to a private fork of the
+ * snapshot, so the callback reads its own edits and caret moves, and are recorded to be sent back to the
+ * application thread as a single batch once the callback returns. If the document has been modified
+ * since the snapshot was taken, the edits are rebased over those changes, or the batch is rejected if
+ * any edit overlaps a change.
+ *
+ * @author Rohan Khayech
+ */
+public class EditBatch {
+
+    /**
+     * The position and lengths of a change made to the document, without the text it inserted,
+     * which are all that is needed to rebase edits over the change.
+     */
+    public static class Change {
+        /** The position where the change occurred. */
+        private final int offset;
+        /** The number of characters removed by the change. */
+        private final int removedLength;
+        /** The number of characters inserted by the change. */
+        private final int insertedLength;
+        /** The version of the document after the change. */
+        private final long version;
+
+        /**
+         * Constructs a new change.
+         * @param offset The position where the change occurred.
+         * @param removedLength The number of characters removed by the change.
+         * @param insertedLength The number of characters inserted by the change.
+         * @param version The version of the document after the change.
+         */
+        public Change(int offset, int removedLength, int insertedLength, long version) {
+            this.offset = offset;
+            this.removedLength = removedLength;
+            this.insertedLength = insertedLength;
+            this.version = version;
+        }
+
+        /**
+         * @return The version of the document after the change.
+         */
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * An edit recorded against the snapshot, following the edits recorded before it.
+     */
+    private static class Edit {
+        /** The start of the replaced range, or the selection anchor if only selecting. */
+        private final int start;
+        /** The end of the replaced range, or the caret position if only selecting. */
+        private final int end;
+        /** The text to insert, or {@code null} if only selecting. */
+        private final String text;
+        /** The position to move the caret to after the edit, or -1 to leave it where it is. */
+        private int caret;
+
+        /**
+         * Constructs a new recorded edit.
+         * @param start The start of the replaced range, or the selection anchor if only selecting.
+         * @param end The end of the replaced range, or the caret position if only selecting.
+         * @param text The text to insert, or {@code null} if only selecting.
+         * @param caret The position to move the caret to after the edit, or -1 to leave it where it is.
+         */
+        private Edit(int start, int end, String text, int caret) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+            this.caret = caret;
+        }
+    }
+
+    /** The snapshot of the document the callback started from. */
+    private final Document snapshot;
+    /** The snapshot with the callback's edits applied, or {@code null} if nothing has been edited. */
+    private Document edited;
+    /** The position of the caret, following the callback's edits. */
+    private int caret;
+    /** The edits recorded by the callback, in the order they were made. */
+    private final List<Edit> edits = new ArrayList<>();
+    /** The API edit calls made by the callback, or {@code null} if they are not being recorded. */
+    private Macro macro;
+
+    /**
+     * Constructs a new batch reading from the specified snapshot.
+     * @param snapshot A read-only snapshot of the document.
+     * @param caret The position of the caret when the snapshot was taken.
+     */
+    public EditBatch(Document snapshot, int caret) {
+        this.snapshot = snapshot;
+        this.caret = caret;
+    }
+
+    /**
+     * @return The document read by the callback, which is the snapshot with the callback's edits applied.
+     */
+    public Document getDocument() {
+        return edited != null ? edited : snapshot;
+    }
+
+    /**
+     * @return The position of the caret, following the callback's edits.
+     */
+    public int getCaretPosition() {
+        return caret;
+    }
+
+    /**
+     * @return The version of the document the snapshot was taken at.
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * @return The API edit calls made by the callback, or {@code null} if they are not being recorded.
+     */
+    public Macro getMacro() {
+        return macro;
+    }
+
+    /**
+     * Sets the macro recording the API edit calls made by the callback.
+     * @param macro The macro to record the calls in, or {@code null} to not record them.
+     */
+    public void setMacro(Macro macro) {
+        this.macro = macro;
+    }
+
+    /**
+     * @return {@code true} if no edits have been recorded, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    /**
+     * Replaces the text between the specified positions of the edited snapshot and records the edit,
+     * moving the caret to the end of the inserted text.
+     * @param start The start position (inclusive).
+     * @param end The end position (exclusive).
+     * @param text The text to insert.
+     * @throws IndexOutOfBoundsException If the range is not within the edited snapshot.
+     */
+    public void replace(int start, int end, String text) {
+        if (edited == null) {
+            edited = snapshot.fork();
+        }
+        edited.replace(start, end, text);
+        caret = start + text.length();
+        edits.add(new Edit(start, end, text, caret));
+    }
+
+    /**
+     * Records moving the caret to the specified position, following the most recent edit.
+     * @param pos The position to move the caret to.
+     */
+    public void moveCaret(int pos) {
+        caret = pos;
+        if (!edits.isEmpty() && edits.get(edits.size() - 1).text != null) {
+            edits.get(edits.size() - 1).caret = pos;
+        } else {
+            select(pos, pos);
+        }
+    }
+
+    /**
+     * Records selecting the text between the specified positions.
+     * @param anchor The position to anchor the selection at.
+     * @param caret The position to move the caret to.
+     */
+    public void select(int anchor, int caret) {
+        this.caret = caret;
+        edits.add(new Edit(anchor, caret, null, -1));
+    }
+
+    /**
+     * Rebases the recorded edits over the specified changes, then applies them to the document.
+     * Nothing is applied if any edit overlaps one of the changes.
+     * @param changes The changes made to the document since the snapshot was taken, in order.
+     * @param document The document to apply the edits to.
+     * @param view The view displaying the document.
+     * @return {@code true} if the edits were applied, {@code false} if they were rejected.
+     */
+    public boolean apply(List<Change> changes, Document document, EditorView view) {
+        // The offset, removed length and inserted length of each change, moved over each edit in turn,
+        // as each edit follows the edits before it rather than the snapshot.
+        int[][] concurrent = new int[changes.size()][];
+        for (int i = 0; i < changes.size(); i++) {
+            Change change = changes.get(i);
+            concurrent[i] = new int[] {change.offset, change.removedLength, change.insertedLength};
+        }
+
+        // Rebase every edit before applying any, so nothing is applied if any edit is rejected.
+        int[][] rebased = new int[edits.size()][];
+        for (int i = 0; i < edits.size(); i++) {
+            Edit edit = edits.get(i);
+            int start = edit.start;
+            int end = edit.end;
+            for (int[] change : concurrent) {
+                if (edit.text == null) {
+                    // Selections are never rejected, just moved.
+                    start = rebase(start, change[0], change[1], change[2]);
+                    end = rebase(end, change[0], change[1], change[2]);
+                } else if (isBefore(start, end, change[0], change[1])) {
+                    // The change is after the edit, so is moved by it.
+                    change[0] += edit.text.length() - (end - start);
+                } else if (change[0] + change[1] <= start) {
+                    // The change is before the edit, or inserted at the same position, in which case the edit follows it.
+                    start += change[2] - change[1];
+                    end += change[2] - change[1];
+                } else {
+                    return false;
+                }
+            }
+            rebased[i] = new int[] {start, end};
+        }
+
+        for (int i = 0; i < edits.size(); i++) {
+            Edit edit = edits.get(i);
+            int start = rebased[i][0];
+            int end = rebased[i][1];
+            if (edit.text == null) {
+                view.selectRange(start, end);
+            } else {
+                document.replace(start, end, edit.text);
+                if (edit.caret >= 0) {
+                    // Keep the caret in the same place relative to the edit.
+                    view.positionCaret(edit.caret + start - edit.start);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether an edit is entirely before a change made at the same time.
+     * @param start The start of the edit's range.
+     * @param end The end of the edit's range.
+     * @param offset The position where the change occurred.
+     * @param removedLength The number of characters removed by the change.
+     * @return {@code true} if the edit is before the change, {@code false} otherwise.
+     */
+    private static boolean isBefore(int start, int end, int offset, int removedLength) {
+        return end < offset || (end == offset && (start < end || removedLength > 0));
+    }
+
+    /**
+     * Rebases a position over a change made before it.
+     * @param pos The position.
+     * @param offset The position where the change occurred.
+     * @param removedLength The number of characters removed by the change.
+     * @param insertedLength The number of characters inserted by the change.
+     * @return The rebased position.
+     */
+    private static int rebase(int pos, int offset, int removedLength, int insertedLength) {
+        if (pos < offset) {
+            return pos;
+        } else if (pos >= offset + removedLength) {
+            return pos - removedLength + insertedLength;
+        } else {
+            return offset;
+        }
+    }
+}
@@ -2,7 +2,18 @@ package texteditor.app.controller;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+
+import texteditor.app.model.MappedText;
 
 /**
  * The File I/O class handles loading and saving files with a specific encoding.
@@ -11,9 +22,48 @@ import java.nio.file.Files;
  */
 public class FileIO {
 
+    /**
+     * Writes the contents of a file to a channel.
+     */
+    @FunctionalInterface
+    public interface ChannelWriter {
+        /**
+         * Writes the contents of the file.
+         * @param channel The channel to write to.
+         * @throws IOException If there is an issue writing to the channel.
+         */
+        void write(FileChannel channel) throws IOException;
+    }
+
+    /** Files larger than this size (in bytes) are memory-mapped rather than loaded into memory. */
+    public static final long LARGE_FILE_SIZE = 64L * 1024 * 1024;
+
+    /** Generates the names of temporary files. */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** Whether loaded files are stored compactly, see {@link #setCompactStorage(boolean)}. */
+    private boolean compactStorage = true;
+
     /** Constructs a new FileIO object. */
     public FileIO() {}
 
+    /**
+     * @return {@code true} if loaded files are stored compactly, {@code false} otherwise.
+     */
+    public boolean isCompactStorage() {
+        return compactStorage;
+    }
+
+    /**
+     * Sets whether files loaded into a document are stored compactly, keeping chunks of text that only
+     * contain Latin-1 characters as bytes rather than UTF-16. This roughly halves the memory used by
+     * ASCII-heavy files such as logs and CSVs, at a small cost to character access.
+     * @param compactStorage {@code true} to store loaded files compactly.
+     */
+    public void setCompactStorage(boolean compactStorage) {
+        this.compactStorage = compactStorage;
+    }
+
     /**
      * Loads the contents of the specified file as a string.
      * @param file The file to load.
@@ -26,13 +76,112 @@ public class FileIO {
     }
 
     /**
-     * Saves the specified text to the specified file.
+     * Opens the contents of the specified file for editing. Large files are memory-mapped and decoded
+     * on demand, while smaller files are loaded into memory.
+     * @param file The file to open.
+     * @param encoding The encoding to use.
+     * @return A character sequence containing the file contents.
+     * @throws IOException If there is an issue loading the file or an incorrect encoding is specified.
+     */
+    public CharSequence open(File file, String encoding) throws IOException {
+        if (file.length() > LARGE_FILE_SIZE) {
+            return map(file, encoding);
+        } else {
+            return load(file, encoding);
+        }
+    }
+
+    /**
+     * Memory-maps the specified file as a read-only character sequence, which decodes the file contents on demand.
+     * @param file The file to map.
+     * @param encoding The encoding to use.
+     * @return A character sequence containing the file contents.
+     * @throws IOException If there is an issue mapping the file or an incorrect encoding is specified.
+     */
+    public CharSequence map(File file, String encoding) throws IOException {
+        return new MappedText(file.toPath(), getCharset(encoding));
+    }
+
+    /**
+     * Saves the specified text to the specified file, replacing it atomically, see {@link #replace(File, ChannelWriter)}.
      * @param file The file to write to.
      * @param contents The text to write into the file.
      * @param encoding The encoding to use.
      * @throws IOException If there is an issue saving to the file or an incorrect encoding is specified.
      */
     public void save(File file, String contents, String encoding) throws IOException {
-        Files.write(file.toPath(),contents.getBytes(encoding));
+        ByteBuffer bytes = ByteBuffer.wrap(contents.getBytes(encoding));
+        replace(file, channel -> {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        });
+    }
+
+    /**
+     * Writes the contents of a file to a temporary file next to it, which is flushed to disk and then
+     * atomically renamed over the file. The file is therefore either left untouched or fully replaced,
+     * even if the application crashes during the save, and any memory mapping of the file stays valid.
+     * @param file The file to replace.
+     * @param writer Writes the new contents of the file.
+     * @throws IOException If there is an issue saving to the file.
+     */
+    public void replace(File file, ChannelWriter writer) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        // Create the temporary file with the default permissions for new files, unlike Files.createTempFile().
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + Long.toUnsignedString(RANDOM.nextLong()) + ".tmp");
+        Files.createFile(temp);
+        try {
+            // Keep the permissions of the file being replaced.
+            if (Files.exists(target)) {
+                try {
+                    Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+                } catch (UnsupportedOperationException e) {
+                    // Not a POSIX file system, so the default permissions are used.
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writer.write(channel);
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory(target.getParent());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up the charset with the specified name.
+     * @param encoding The name of the encoding.
+     * @return The charset.
+     * @throws UnsupportedEncodingException If the encoding is not supported.
+     */
+    public Charset getCharset(String encoding) throws UnsupportedEncodingException {
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+    }
+
+    /**
+     * Flushes the specified directory to disk, so that the rename is durable.
+     * This is not supported on all platforms, in which case it is skipped.
+     * @param dir The directory to flush.
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened on this platform.
+        }
     }
 }
@@ -0,0 +1,57 @@
+package texteditor.app.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event recording the loading of a file into the document.
+ *
+ * @author Rohan Khayech
+ */
+@Name("texteditor.FileLoad")
+@Label("File Load")
+@Category({"Text Editor", "File"})
+@Description("A file was read and decoded into the document")
+public class FileLoadEvent extends Event {
+
+    /** The path of the file. */
+    @Label("Path")
+    private String path;
+
+    /** The size of the file. */
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    /** The name of the file's encoding. */
+    @Label("Charset")
+    private String charset;
+
+    /** Whether the file was memory-mapped rather than streamed. */
+    @Label("Mapped")
+    private boolean mapped;
+
+    /** Whether the file was loaded completely, without an error or being cancelled. */
+    @Label("Succeeded")
+    private boolean succeeded;
+
+    /**
+     * Sets the details of the loaded file.
+     * @param path The path of the file.
+     * @param bytes The size of the file.
+     * @param charset The name of the file's encoding.
+     * @param mapped Whether the file was memory-mapped rather than streamed.
+     * @param succeeded Whether the file was loaded completely, without an error or being cancelled.
+     */
+    public void set(String path, long bytes, String charset, boolean mapped, boolean succeeded) {
+        this.path = path;
+        this.bytes = bytes;
+        this.charset = charset;
+        this.mapped = mapped;
+        this.succeeded = succeeded;
+    }
+}
@@ -0,0 +1,201 @@
+package texteditor.app.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import texteditor.app.model.Document;
+import texteditor.app.model.LineIndex;
+
+/**
+ * Background task that loads a file into the document without blocking the JavaFX application thread.
+ * <p>
+ * The file is read and decoded in fixed-size chunks, which are appended to the document on the
+ * application thread as soon as they are decoded, so the start of the file is displayed while the rest is
+ * still loading. The chunks decoded while the application thread is busy are appended together as one change,
+ * and reading waits while too much decoded text is waiting to be appended, so reading a fast disk does not
+ * flood the event queue with the whole file. Large files are memory-mapped and indexed on the background thread instead.
+ * The document's storage is set according to {@link FileIO#isCompactStorage()} before loading.
+ *
+ * @author Rohan Khayech
+ */
+public class FileLoader extends Task<Void> {
+
+    /** The number of bytes read and decoded at a time. */
+    private static final int CHUNK_SIZE = 1 << 16;
+    /** The number of decoded characters that may be waiting to be appended before reading waits. */
+    private static final int MAX_PENDING_CHARS = 4 * CHUNK_SIZE;
+
+    /** Reference to the File I/O controller. */
+    private final FileIO fileIO;
+    /** The document to load the file into. */
+    private final Document document;
+    /** The file to load. */
+    private final File file;
+    /** The encoding of the file. */
+    private final String encoding;
+    /** Decoded text waiting to be appended to the document, which also guards {@link #appendPosted}. */
+    private final StringBuilder pending = new StringBuilder();
+    /** Whether the pending text will be appended by an action already posted to the application thread. */
+    private boolean appendPosted = false;
+
+    /**
+     * Constructs a new file loading task.
+     * @param fileIO Reference to the File I/O controller.
+     * @param document The document to load the file into.
+     * @param file The file to load.
+     * @param encoding The encoding of the file.
+     */
+    public FileLoader(FileIO fileIO, Document document, File file, String encoding) {
+        this.fileIO = fileIO;
+        this.document = document;
+        this.file = file;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Loads the file into the document.
+     * @return {@code null}
+     * @throws IOException If there is an issue loading the file or an incorrect encoding is specified.
+     * @throws InterruptedException If the task is cancelled while waiting to append text.
+     */
+    @Override
+    protected Void call() throws IOException, InterruptedException {
+        FileLoadEvent event = new FileLoadEvent();
+        event.begin();
+        long length = file.length();
+        boolean mapped = length > FileIO.LARGE_FILE_SIZE;
+        boolean succeeded = false;
+        try {
+            if (mapped) {
+                loadMapped();
+            } else {
+                loadStreamed();
+            }
+            succeeded = !isCancelled();
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.set(file.getPath(), length, encoding, mapped, succeeded);
+                event.commit();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Memory-maps the file and builds its line index, then sets it as the contents of the document.
+     * @throws IOException If there is an issue mapping the file or an incorrect encoding is specified.
+     */
+    private void loadMapped() throws IOException {
+        updateProgress(-1, 1);
+        CharSequence text = fileIO.map(file, encoding);
+        LineIndex lines = new LineIndex(text);
+        Platform.runLater(() -> {
+            if (!isCancelled()) {
+                document.setCompact(fileIO.isCompactStorage());
+                document.setText(text, lines);
+            }
+        });
+    }
+
+    /**
+     * Reads and decodes the file in chunks, appending each chunk to the document as it is decoded.
+     * @throws IOException If there is an issue reading the file or an incorrect encoding is specified.
+     * @throws InterruptedException If the task is cancelled while waiting to append text.
+     */
+    private void loadStreamed() throws IOException, InterruptedException {
+        CharsetDecoder decoder = fileIO.getCharset(encoding).newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE);
+        CharBuffer out = CharBuffer.allocate(CHUNK_SIZE);
+
+        // Clear the document before appending to it.
+        Platform.runLater(() -> {
+            if (!isCancelled()) {
+                document.setCompact(fileIO.isCompactStorage());
+                document.setText("");
+            }
+        });
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long read = 0;
+            boolean endOfFile = false;
+            while (!endOfFile && !isCancelled()) {
+                int count = channel.read(in);
+                if (count < 0) {
+                    endOfFile = true;
+                } else {
+                    read += count;
+                }
+
+                // Decode the bytes read so far, keeping any incomplete character for the next chunk.
+                in.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(in, out, endOfFile);
+                    append(out);
+                } while (result.isOverflow());
+                if (endOfFile) {
+                    while (decoder.flush(out).isOverflow()) {
+                        append(out);
+                    }
+                    append(out);
+                }
+                in.compact();
+
+                updateProgress(read, size);
+            }
+        }
+    }
+
+    /**
+     * Adds the decoded characters to the text waiting to be appended to the end of the document on the
+     * application thread, and clears the buffer. Waits first if too much text is already waiting.
+     * @param out The buffer of decoded characters.
+     * @throws InterruptedException If the task is cancelled while waiting.
+     */
+    private void append(CharBuffer out) throws InterruptedException {
+        out.flip();
+        if (out.hasRemaining()) {
+            synchronized (pending) {
+                while (pending.length() >= MAX_PENDING_CHARS) {
+                    pending.wait();
+                }
+                pending.append(out);
+                if (!appendPosted) {
+                    appendPosted = true;
+                    Platform.runLater(this::appendPending);
+                }
+            }
+        }
+        out.clear();
+    }
+
+    /**
+     * Appends all of the text waiting to be appended to the end of the document as one change.
+     * Called on the application thread.
+     */
+    private void appendPending() {
+        String text;
+        synchronized (pending) {
+            text = pending.toString();
+            pending.setLength(0);
+            appendPosted = false;
+            pending.notifyAll();
+        }
+        if (!isCancelled()) {
+            document.insert(document.length(), text);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package texteditor.app.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event recording the saving of the document to a file.
+ *
+ * @author Rohan Khayech
+ */
+@Name("texteditor.FileSave")
+@Label("File Save")
+@Category({"Text Editor", "File"})
+@Description("The document was encoded and written to a file")
+public class FileSaveEvent extends Event {
+
+    /** The path of the file. */
+    @Label("Path")
+    private String path;
+
+    /** The number of bytes written to the file. */
+    @Label("Bytes Written")
+    @DataAmount
+    private long bytes;
+
+    /** The name of the file's encoding. */
+    @Label("Charset")
+    private String charset;
+
+    /** Whether only the changed part of the file was written. */
+    @Label("Incremental")
+    private boolean incremental;
+
+    /** Whether the file was saved completely, without an error or being cancelled. */
+    @Label("Succeeded")
+    private boolean succeeded;
+
+    /**
+     * Sets the details of the saved file.
+     * @param path The path of the file.
+     * @param bytes The number of bytes written to the file.
+     * @param charset The name of the file's encoding.
+     * @param incremental Whether only the changed part of the file was written.
+     * @param succeeded Whether the file was saved completely, without an error or being cancelled.
+     */
+    public void set(String path, long bytes, String charset, boolean incremental, boolean succeeded) {
+        this.path = path;
+        this.bytes = bytes;
+        this.charset = charset;
+        this.incremental = incremental;
+        this.succeeded = succeeded;
+    }
+}
@@ -0,0 +1,253 @@
+package texteditor.app.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import javafx.concurrent.Task;
+
+import texteditor.app.model.Document;
+import texteditor.app.model.MappedText;
+
+/**
+ * Background task that saves a snapshot of the document without blocking the JavaFX application thread.
+ * <p>
+ * The snapshot is encoded in fixed-size chunks and streamed into a temporary file next to the target,
+ * which is flushed to disk and then atomically renamed over the target. The target file is therefore
+ * either left untouched or fully replaced, even if the application crashes during the save.
+ * <p>
+ * When saving a memory-mapped file back to itself, only the part of the file that has changed is
+ * written instead. The pieces of the snapshot that still reference the original file determine the
+ * unchanged prefix and suffix of the file. The text between them is re-encoded and written in place if
+ * its encoded length is unchanged, otherwise the file is rewritten from the start of the change onwards.
+ * This trades the atomicity of the save for I/O proportional to the size of the change.
+ *
+ * @author Rohan Khayech
+ */
+public class FileSaver extends Task<Void> {
+
+    /** The number of characters encoded at a time. */
+    private static final int CHUNK_SIZE = 1 << 16;
+    /** The maximum number of characters rewritten by an incremental save, above which the whole file is saved. */
+    private static final int INCREMENTAL_LIMIT = 1 << 22;
+
+    /** Reference to the File I/O controller. */
+    private final FileIO fileIO;
+    /** The snapshot of the document to save. */
+    private final Document snapshot;
+    /** The file to save to. */
+    private final File file;
+    /** The encoding to use. */
+    private final String encoding;
+    /** The number of bytes written to the file so far. */
+    private long bytesWritten = 0;
+
+    /**
+     * Constructs a new file saving task.
+     * @param fileIO Reference to the File I/O controller.
+     * @param snapshot A read-only snapshot of the document to save.
+     * @param file The file to save to.
+     * @param encoding The encoding to use.
+     */
+    public FileSaver(FileIO fileIO, Document snapshot, File file, String encoding) {
+        this.fileIO = fileIO;
+        this.snapshot = snapshot;
+        this.file = file;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Saves the snapshot to the file.
+     * @return {@code null}
+     * @throws IOException If there is an issue saving to the file or an incorrect encoding is specified.
+     */
+    @Override
+    protected Void call() throws IOException {
+        FileSaveEvent event = new FileSaveEvent();
+        event.begin();
+        boolean incremental = false;
+        boolean succeeded = false;
+        try {
+            incremental = saveIncremental();
+            if (!incremental) {
+                fileIO.replace(file, this::write);
+            }
+            succeeded = true;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.set(file.getPath(), bytesWritten, encoding, incremental, succeeded);
+                event.commit();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes only the changed part of the snapshot to the file, if the snapshot was loaded from the
+     * same memory-mapped file and the change is small enough.
+     * @return {@code true} if the file was saved, {@code false} if the whole file needs to be saved instead.
+     * @throws IOException If there is an issue writing to the file or an incorrect encoding is specified.
+     */
+    private boolean saveIncremental() throws IOException {
+        if (!(snapshot.getOriginal() instanceof MappedText)) {
+            return false;
+        }
+        MappedText original = (MappedText) snapshot.getOriginal();
+        Path target = file.toPath();
+        if (!original.isMappedFrom(target, fileIO.getCharset(encoding))) {
+            return false;
+        }
+
+        // Find the range of the file that has changed, including any previously overwritten chunks,
+        // widened to chunk boundaries so the byte offsets are known.
+        int originalLength = original.length();
+        int length = snapshot.length();
+        int prefix = snapshot.getOriginalPrefix();
+        int suffix = Math.min(snapshot.getOriginalSuffix(), Math.min(length, originalLength) - prefix);
+        int start = original.getChunkStart(Math.min(prefix, original.getDirtyStart()));
+        int end = original.getChunkEnd(Math.max(originalLength - suffix, original.getDirtyEnd()));
+        Charset charset = original.getCharset(start);
+        if (charset == null) {
+            return false;
+        }
+
+        // The end of the changed range within the snapshot.
+        int changeEnd = end - originalLength + length;
+        if (end < originalLength && Math.max(end, changeEnd) - start <= INCREMENTAL_LIMIT) {
+            // Patch the file in place if the changed text encodes to the same number of bytes.
+            ByteBuffer bytes = encode(charset, start, changeEnd);
+            long position = original.getByteOffset(start);
+            if (bytes.remaining() == original.getByteOffset(end) - position) {
+                write(original, start, end, bytes, position, false);
+                return true;
+            }
+        }
+
+        if (Math.max(length, originalLength) - start <= INCREMENTAL_LIMIT) {
+            // Otherwise rewrite the file from the start of the change onwards.
+            ByteBuffer bytes = encode(charset, start, length);
+            write(original, start, originalLength, bytes, original.getByteOffset(start), true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Encodes part of the snapshot in memory, so the original file is not read while it is being written.
+     * @param charset The charset to encode the text in.
+     * @param start The start offset within the snapshot (inclusive).
+     * @param end The end offset within the snapshot (exclusive).
+     * @return A buffer containing the encoded bytes.
+     * @throws IOException If the text cannot be encoded.
+     * @throws CancellationException If the task is cancelled.
+     */
+    private ByteBuffer encode(Charset charset, int start, int end) throws IOException {
+        char[] chars = new char[end - start];
+        snapshot.getChars(start, end, chars, 0);
+        ByteBuffer bytes = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .encode(CharBuffer.wrap(chars));
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the encoded bytes over part of the original file, after detaching the overwritten chunks
+     * so the document's text is not affected.
+     * @param original The memory-mapped original file.
+     * @param start The character offset of the start of the first overwritten chunk.
+     * @param end The character offset of the end of the last overwritten chunk.
+     * @param bytes The encoded bytes to write.
+     * @param position The byte offset to write the bytes at.
+     * @param truncate {@code true} if the file should end after the written bytes.
+     * @throws IOException If there is an issue writing to the file.
+     */
+    private void write(MappedText original, int start, int end, ByteBuffer bytes, long position, boolean truncate) throws IOException {
+        updateProgress(-1, 1);
+        original.detach(start, end);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                int count = channel.write(bytes, position);
+                position += count;
+                bytesWritten += count;
+            }
+            if (truncate) {
+                channel.truncate(position);
+            }
+            channel.force(true);
+        }
+        original.updateAttributes();
+        updateProgress(1, 1);
+    }
+
+    /**
+     * Encodes the snapshot in chunks and writes it to the specified channel.
+     * @param channel The channel to write to.
+     * @throws IOException If there is an issue writing to the channel or an incorrect encoding is specified.
+     * @throws CancellationException If the task is cancelled.
+     */
+    private void write(FileChannel channel) throws IOException {
+        // Replace unmappable characters, matching the behaviour of String.getBytes().
+        CharsetEncoder encoder = fileIO.getCharset(encoding).newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer in = CharBuffer.allocate(CHUNK_SIZE);
+        ByteBuffer out = ByteBuffer.allocate((int) Math.ceil(CHUNK_SIZE * encoder.maxBytesPerChar()));
+
+        int length = snapshot.length();
+        int pos = 0;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+
+            // Fill the input buffer after any characters left over from the previous chunk.
+            int count = Math.min(in.remaining(), length - pos);
+            snapshot.getChars(pos, pos + count, in.array(), in.arrayOffset() + in.position());
+            in.position(in.position() + count);
+            pos += count;
+            endOfInput = pos == length;
+
+            in.flip();
+            CoderResult result;
+            do {
+                result = encoder.encode(in, out, endOfInput);
+                write(channel, out);
+            } while (result.isOverflow());
+            in.compact();
+
+            updateProgress(pos, length);
+        }
+        while (encoder.flush(out).isOverflow()) {
+            write(channel, out);
+        }
+        write(channel, out);
+    }
+
+    /**
+     * Writes the encoded bytes to the specified channel and clears the buffer.
+     * @param channel The channel to write to.
+     * @param out The buffer of encoded bytes.
+     * @throws IOException If there is an issue writing to the channel.
+     */
+    private void write(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            bytesWritten += channel.write(out);
+        }
+        out.clear();
+    }
+}
@@ -0,0 +1,543 @@
+package texteditor.app.controller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import texteditor.api.API;
+import texteditor.api.ChangeEventHandler;
+import texteditor.api.CommandHandler;
+import texteditor.api.FunctionKeyHandler;
+import texteditor.api.ModifyEventHandler;
+import texteditor.api.OptionEventHandler;
+import texteditor.api.TextChange;
+import texteditor.app.model.CommandRegistry;
+import texteditor.app.model.Document;
+import texteditor.app.model.UndoHistory;
+
+/**
+ * Implementation of the API over an in-memory document, without a GUI or the JavaFX toolkit.
+ * Used to run plugins and scripts over files in batch mode.
+ * <p>
+ * The caret and selection are held in fields, options are selected by name, and user input is taken from
+ * a queue of prepared answers. Callbacks run on the calling thread: modify and change events are queued
+ * as the text is modified, and delivered when {@link #flush()} is called. Each instance must only be used
+ * by one thread at a time, but separate instances may be used in parallel.
+ *
+ * @author Rohan Khayech
+ */
+public class HeadlessAPI implements API {
+
+    /** The maximum number of rounds of notifications delivered by a flush, in case handlers keep modifying the text. */
+    private static final int MAX_FLUSH_ROUNDS = 64;
+
+    /** The current locale. */
+    private final Locale locale;
+    /** The document containing the edited text. */
+    private final Document document;
+    /** The undo history of the document. */
+    private final UndoHistory history;
+    /** The position of the caret. */
+    private int caret = 0;
+    /** The start of the highlighted text. */
+    private int selectionStart = 0;
+    /** The end of the highlighted text. */
+    private int selectionEnd = 0;
+    /** List of handlers for text modification. */
+    private final List<ModifyEventHandler> modifyEventHandlers = new ArrayList<>();
+    /** List of handlers receiving each change to the text. */
+    private final List<ChangeEventHandler> changeEventHandlers = new ArrayList<>();
+    /** List of handlers for function key presses. */
+    private final List<FunctionKeyHandler> functionKeyHandlers = new ArrayList<>();
+    /** Registry of the commands added by plugins and scripts. */
+    private final CommandRegistry commands = new CommandRegistry();
+    /** The handlers of the options added by plugins and scripts, by name. */
+    private final Map<String, OptionEventHandler> options = new LinkedHashMap<>();
+    /** The answers given when prompting the user for input, in order. */
+    private final Deque<String> userInput = new ArrayDeque<>();
+    /** Changes that have not yet been delivered to the change handlers. */
+    private List<TextChange> pendingChanges = new ArrayList<>();
+    /** Whether the text was modified since the modify handlers were last notified. */
+    private boolean modified = false;
+
+    /**
+     * Constructs a new API over the specified document.
+     * @param locale The current locale.
+     * @param document The document containing the edited text.
+     */
+    public HeadlessAPI(Locale locale, Document document) {
+        this.locale = locale;
+        this.document = document;
+        this.history = new UndoHistory(document);
+
+        // Queue notifications until the next flush.
+        document.addListener((offset, removedText, insertedText) -> {
+            if (!changeEventHandlers.isEmpty()) {
+                pendingChanges.add(new TextChange(offset, removedText.length(), insertedText, document.getVersion()));
+            }
+            modified = true;
+        });
+    }
+
+    /**
+     * Replaces the contents of the document with the specified text, as if loaded from a file.
+     * The caret is moved to the start, the undo history is cleared, and the handlers are notified at the next flush.
+     * @param text The loaded text.
+     */
+    public void load(CharSequence text) {
+        history.setRecording(false);
+        document.setText(text);
+        history.clear();
+        history.setRecording(true);
+        caret = 0;
+        selectionStart = 0;
+        selectionEnd = 0;
+    }
+
+    /**
+     * Moves the caret to the specified position.
+     * @param caret The position of the caret.
+     */
+    public void setCaretPosition(int caret) {
+        this.caret = caret;
+    }
+
+    /**
+     * @return The start of the highlighted text.
+     */
+    public int getSelectionStart() {
+        return selectionStart;
+    }
+
+    /**
+     * @return The end of the highlighted text.
+     */
+    public int getSelectionEnd() {
+        return selectionEnd;
+    }
+
+    /**
+     * Adds an answer to give the next time the user is prompted for input.
+     * Once all answers are used, the prompt is treated as cancelled.
+     * @param input The input text.
+     */
+    public void addUserInput(String input) {
+        userInput.addLast(input);
+    }
+
+    /**
+     * Presses the specified function key, invoking the command bound to it. If no command is bound to the key,
+     * all function key press handlers are notified instead.
+     * @param keyNum The number of the function key that was pressed.
+     * @throws IllegalArgumentException If there is no function key with the number.
+     */
+    public void notifyFunctionKeyPress(int keyNum) {
+        String command = commands.getCommand(CommandRegistry.functionKey(keyNum));
+        if (command != null) {
+            commands.invoke(command);
+            return;
+        }
+        for (FunctionKeyHandler handler : new ArrayList<>(functionKeyHandlers)) {
+            handler.onKeyPressed(keyNum);
+        }
+    }
+
+    /**
+     * Invokes the command with the specified name, as if the user pressed a key bound to it.
+     * @param name The name of the command.
+     * @throws IllegalArgumentException If no command with the name has been registered.
+     */
+    public void invokeCommand(String name) {
+        if (!commands.invoke(name)) {
+            throw new IllegalArgumentException(name);
+        }
+    }
+
+    /**
+     * Selects the option with the specified name, as if the user pressed its button.
+     * @param name The display name of the option.
+     * @throws IllegalArgumentException If no option with the name has been added.
+     */
+    public void selectOption(String name) {
+        OptionEventHandler handler = options.get(name);
+        if (handler == null) {
+            throw new IllegalArgumentException(name);
+        }
+        handler.onOptionSelected();
+    }
+
+    /**
+     * Delivers any pending changes to the change event handlers and notifies the modify event handlers,
+     * repeating while the handlers modify the text, up to a fixed number of rounds.
+     */
+    public void flush() {
+        for (int round = 0; round < MAX_FLUSH_ROUNDS && modified; round++) {
+            List<TextChange> changes = pendingChanges;
+            pendingChanges = new ArrayList<>();
+            modified = false;
+            for (TextChange change : changes) {
+                for (ChangeEventHandler handler : new ArrayList<>(changeEventHandlers)) {
+                    handler.onTextChanged(change);
+                }
+            }
+            for (ModifyEventHandler handler : new ArrayList<>(modifyEventHandlers)) {
+                handler.onTextModified();
+            }
+        }
+    }
+
+    /**
+     * @return The application's current locale.
+     */
+    @Override
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * @return A string containing the full contents of the edited text.
+     */
+    @Override
+    public String getText() {
+        return document.getText();
+    }
+
+    /**
+     * Replaces the full contents of the edited text with the specified text.
+     * @param text The text to set.
+     */
+    @Override
+    public void setText(String text) {
+        history.beginCompound();
+        try {
+            document.setText(text);
+        } finally {
+            history.endCompound();
+        }
+        caret = Math.min(caret, document.length());
+    }
+
+    /**
+     * @return An integer representing the position of the caret within the edited text (in characters).
+     */
+    @Override
+    public int getCaretPosition() {
+        return caret;
+    }
+
+    /**
+     * @return All characters after the caret position in the edited text.
+     */
+    @Override
+    public String getAfter() {
+        return document.getText(caret, document.length());
+    }
+
+    /**
+     * Returns the specified number of characters after the caret postion.
+     * @param numChars The number of characters to return.
+     * @return A string containing the specified number of characters after the caret postion.
+     */
+    @Override
+    public String getAfter(int numChars) {
+        if (numChars > 0) {
+            return document.getText(caret, Math.min(caret + numChars, document.length()));
+        } else {
+            return "";
+        }
+    }
+
+    /**
+     * @return All characters before the caret position in the edited text.
+     */
+    @Override
+    public String getBefore() {
+        return document.getText(0, caret);
+    }
+
+    /**
+     * Returns the specified number of characters before the caret position.
+     * @param numChars The number of characters to return.
+     * @return A string containing the the specified number of characters before the caret postion.
+     */
+    @Override
+    public String getBefore(int numChars) {
+        if (numChars > 0) {
+            return document.getText(Math.max(caret - numChars, 0), caret);
+        } else {
+            return "";
+        }
+    }
+
+    /**
+     * Returns the character at the specified position.
+     * @param offset The position of the character within the edited text (in characters).
+     * @return The character at the position.
+     * @throws IndexOutOfBoundsException If the position is not within the edited text.
+     */
+    @Override
+    public char charAt(int offset) {
+        return document.charAt(offset);
+    }
+
+    /**
+     * Returns a read-only view of the characters between the specified positions, without copying them.
+     * The view is only valid until the edited text is next modified.
+     * @param start The start position (inclusive).
+     * @param end The end position (exclusive).
+     * @return A character sequence containing the characters in the range.
+     * @throws IndexOutOfBoundsException If the range is not within the edited text.
+     */
+    @Override
+    public CharSequence charsBetween(int start, int end) {
+        return document.subSequence(start, end);
+    }
+
+    /**
+     * @return The version of the edited text, which is incremented each time the text is modified.
+     */
+    @Override
+    public long getVersion() {
+        return document.getVersion();
+    }
+
+    /**
+     * Returns the line containing the specified position.
+     * @param offset The position within the edited text (in characters).
+     * @return The zero-based index of the line containing the position.
+     * @throws IndexOutOfBoundsException If the position is not within the edited text.
+     */
+    @Override
+    public int getLineOfOffset(int offset) {
+        return document.getLineOfOffset(offset);
+    }
+
+    /**
+     * Returns the position of the start of the specified line.
+     * @param line The zero-based index of the line.
+     * @return The position of the first character of the line (in characters).
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    @Override
+    public int getLineStart(int line) {
+        return document.getLineStart(line);
+    }
+
+    /**
+     * @return The number of lines in the edited text.
+     */
+    @Override
+    public int getLineCount() {
+        return document.getLineCount();
+    }
+
+    /**
+     * Inserts the specified text after the caret position, and moves the caret to
+     * the end of the inserted text.
+     * @param text The string of text to insert.
+     */
+    @Override
+    public void insertText(String text) {
+        replace(caret, caret, text);
+    }
+
+    /**
+     * Inserts the specified text at the start of the current line.
+     * @param text The string of text to insert.
+     */
+    @Override
+    public void insertTextAtSOL(String text) {
+        int newCaret = caret + text.length();
+        int sol = getSOL();
+        replace(sol, sol, text);
+        caret = newCaret;
+    }
+
+    /**
+     * Removes the specified text at the start of the current line, if it exists.
+     * @param text The string of text to remove.
+     */
+    @Override
+    public void removeTextAtSOL(String text) {
+        int sol = getSOL();
+        if (sol + text.length() <= document.length() && document.getText(sol, sol + text.length()).equals(text)) {
+            int newCaret = Math.max(caret - text.length(), sol);
+            replace(sol, sol + text.length(), "");
+            caret = newCaret;
+        }
+    }
+
+    /**
+     * Removes the specified text before the caret position, if it exists.
+     * @param text The string of text to remove.
+     */
+    @Override
+    public void removeTextBeforeCaret(String text) {
+        int start = caret - text.length();
+        if (start >= 0 && document.getText(start, caret).equals(text)) {
+            replace(start, caret, "");
+        }
+    }
+
+    /**
+     * Replaces the characters behind the caret position up to the specified length with the specified text.
+     * @param text The string of text to replace.
+     * @param length The length of characters to replace.
+     */
+    @Override
+    public void replaceText(String text, int length) {
+        replace(Math.max(caret - length, 0), caret, text);
+    }
+
+    /**
+     * Runs the specified edits as a single batch, which is undone as a single step.
+     * @param edits The function making the edits.
+     */
+    @Override
+    public void batchEdit(Runnable edits) {
+        history.beginCompound();
+        try {
+            edits.run();
+        } finally {
+            history.endCompound();
+        }
+    }
+
+    /**
+     * Reverts the most recent change to the edited text, and moves the caret to the restored text.
+     * @return {@code true} if a change was undone, {@code false} if there was nothing to undo.
+     */
+    @Override
+    public boolean undo() {
+        int pos = history.undo();
+        if (pos >= 0) {
+            caret = pos;
+        }
+        return pos >= 0;
+    }
+
+    /**
+     * Reapplies the most recently undone change to the edited text, and moves the caret to the reinserted text.
+     * @return {@code true} if a change was redone, {@code false} if there was nothing to redo.
+     */
+    @Override
+    public boolean redo() {
+        int pos = history.redo();
+        if (pos >= 0) {
+            caret = pos;
+        }
+        return pos >= 0;
+    }
+
+    /**
+     * Highlights the text between the specified indexes, moving the caret to the end.
+     * @param start The start position of text to highlight.
+     * @param end The end position of text to highlight.
+     */
+    @Override
+    public void highlightText(int start, int end) {
+        selectionStart = start;
+        selectionEnd = end;
+        caret = end;
+    }
+
+    /**
+     * Registers a callback function that is called when the edited text is modified.
+     * @param callback The function to be called.
+     */
+    @Override
+    public void registerModifyCallback(ModifyEventHandler callback) {
+        modifyEventHandlers.add(callback);
+    }
+
+    /**
+     * Registers a callback function that is called with a record of each change to the edited text.
+     * @param callback The function to be called.
+     */
+    @Override
+    public void registerChangeCallback(ChangeEventHandler callback) {
+        changeEventHandlers.add(callback);
+    }
+
+    /**
+     * Registers a callback function that is called when a function key that is not bound to a command is pressed.
+     * @param callback The function to be called.
+     * @deprecated Use {@link #registerCommand(String, CommandHandler)} and {@link #bindFunctionKey(int, String)}.
+     */
+    @Deprecated
+    @Override
+    public void registerFunctionKeyCallback(FunctionKeyHandler callback) {
+        functionKeyHandlers.add(callback);
+    }
+
+    /**
+     * Registers a named command, which can be invoked with {@link #invokeCommand(String)}.
+     * @param name The unique name of the command.
+     * @param callback The function to be called when the command is invoked.
+     */
+    @Override
+    public void registerCommand(String name, CommandHandler callback) {
+        commands.register(name, callback::onCommand);
+    }
+
+    /**
+     * Binds the specified function key to a command, replacing any command already bound to it.
+     * @param keyNum The number of the function key, from 1 to 24.
+     * @param command The name of the command.
+     * @throws IllegalArgumentException If there is no function key with the number.
+     */
+    @Override
+    public void bindFunctionKey(int keyNum, String command) {
+        commands.bind(CommandRegistry.functionKey(keyNum), command);
+    }
+
+    /**
+     * Adds an option with the given name, which can be selected with {@link #selectOption(String)}.
+     * @param name The localised display name for the option.
+     * @param callback The function to be called.
+     */
+    @Override
+    public void addOption(String name, OptionEventHandler callback) {
+        options.put(name, callback);
+    }
+
+    /**
+     * Returns the next prepared answer to a prompt for user input.
+     * @param title The title to display to the user.
+     * @param prompt The prompt to display to the user.
+     * @return The input text, or {@code null} if no answers remain, as if the user cancelled the prompt.
+     */
+    @Override
+    public String getUserInput(String title, String prompt) {
+        return userInput.pollFirst();
+    }
+
+    /**
+     * Replaces the text between the specified positions, and moves the caret to the end of the inserted text.
+     * The change is recorded as its own undo step.
+     * @param start The start position (inclusive).
+     * @param end The end position (exclusive).
+     * @param text The text to insert.
+     */
+    private void replace(int start, int end, String text) {
+        history.beginCompound();
+        try {
+            document.replace(start, end, text);
+        } finally {
+            history.endCompound();
+        }
+        caret = start + text.length();
+    }
+
+    /**
+     * Gets the index of the start of the current line from the document's line index.
+     * @return The index of the start of the current line, or 0 if on the first line.
+     */
+    private int getSOL() {
+        return document.getLineStart(document.getLineOfOffset(caret));
+    }
+}
@@ -0,0 +1,40 @@
+package texteditor.app.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event recording the dispatch of a key press to function key handlers and key mappings.
+ * Emitted for every key press, so stack traces are not recorded to keep it cheap.
+ *
+ * @author Rohan Khayech
+ */
+@Name("texteditor.KeyDispatch")
+@Label("Key Dispatch")
+@Category({"Text Editor", "Input"})
+@StackTrace(false)
+@Description("A key press was dispatched to function key handlers and custom key mappings")
+public class KeyDispatchEvent extends Event {
+
+    /** The name of the pressed key. */
+    @Label("Key")
+    private String key;
+
+    /** The number of key mappings whose action was performed. */
+    @Label("Mappings Performed")
+    private int mappings;
+
+    /**
+     * Sets the details of the key press.
+     * @param key The name of the pressed key.
+     * @param mappings The number of key mappings whose action was performed.
+     */
+    public void set(String key, int mappings) {
+        this.key = key;
+        this.mappings = mappings;
+    }
+}
@@ -0,0 +1,242 @@
+package texteditor.app.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination.ModifierValue;
+
+import texteditor.app.KeymapParser;
+import texteditor.app.ParseException;
+import texteditor.app.model.KeyMapping;
+import texteditor.app.model.KeyMapping.KeymapAction;
+import texteditor.app.model.KeyMapping.KeymapPosition;
+
+/**
+ * Loads keymap files through a compact binary cache of their parsed key mappings, so large keymaps do not
+ * have to be parsed again on every start.
+ * <p>
+ * The cache is stored next to the keymap file, and is keyed by a SHA-256 hash of the file's contents.
+ * If the hash matches, the cache is memory-mapped and the key mappings are read from it directly.
+ * Otherwise the file is parsed with the {@link KeymapParser} and the cache is rewritten. A cache that is
+ * missing, stale, corrupt or cannot be written never prevents the keymap file from being loaded.
+ *
+ * @author Rohan Khayech
+ */
+public final class KeymapCache {
+
+    /** The extension added to the keymap file name to name its cache. */
+    public static final String CACHE_EXTENSION = ".cache";
+
+    /** The bytes identifying a keymap cache file, "KMAP". */
+    private static final int MAGIC = 0x4B4D4150;
+    /** The version of the cache format, increased whenever it changes. */
+    private static final int VERSION = 2;
+    /** The algorithm hashing the keymap file's contents. */
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /** The modifier values, by their index in the cache. */
+    private static final ModifierValue[] MODIFIER_VALUES = ModifierValue.values();
+    /** The actions, by their index in the cache. */
+    private static final KeymapAction[] ACTIONS = KeymapAction.values();
+    /** The positions, by their index in the cache, which is negative for commands. */
+    private static final KeymapPosition[] POSITIONS = KeymapPosition.values();
+
+    /**
+     * Prevents instantiation, as all methods are static.
+     */
+    private KeymapCache() {
+    }
+
+    /**
+     * Loads the key mappings of the specified keymap file, from its cache if it is up to date.
+     * @param filename The name of the keymap file.
+     * @return The key mappings, in the order they appear in the file.
+     * @throws IOException If the file could not be found or there were errors reading the file.
+     * @throws ParseException If there are any errors while parsing the key mappings.
+     */
+    public static List<KeyMapping> load(String filename) throws IOException, ParseException {
+        Path file = Path.of(filename).toAbsolutePath();
+        Path cache = file.resolveSibling(file.getFileName() + CACHE_EXTENSION);
+        byte[] source = Files.readAllBytes(file);
+        byte[] hash = hash(source);
+
+        List<KeyMapping> keymaps = read(cache, hash);
+        if (keymaps == null) {
+            // Parse the contents that were hashed, in case the file has changed since.
+            keymaps = KeymapParser.parse(new ByteArrayInputStream(source));
+            try {
+                write(cache, hash, keymaps);
+            } catch (IOException e) { // The file will be parsed again next time.
+            }
+        }
+        return keymaps;
+    }
+
+    /**
+     * Reads the key mappings from the cache, if it was written for a keymap file with the specified hash.
+     * @param cache The cache file.
+     * @param hash The hash of the keymap file's contents.
+     * @return The key mappings, or {@code null} if the cache is missing, stale or corrupt.
+     */
+    private static List<KeyMapping> read(Path cache, byte[] hash) {
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            byte[] cachedHash = new byte[Byte.toUnsignedInt(buffer.get())];
+            buffer.get(cachedHash);
+            if (!Arrays.equals(cachedHash, hash)) {
+                return null;
+            }
+
+            // The key codes used by the mappings are stored once, by name, in case their order changes.
+            KeyCode[] codes = new KeyCode[Short.toUnsignedInt(buffer.getShort())];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = KeyCode.valueOf(readString(buffer));
+            }
+
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining()) {
+                return null;
+            }
+            List<KeyMapping> keymaps = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                List<KeyCodeCombination> keySequence = new ArrayList<>();
+                for (int length = Byte.toUnsignedInt(buffer.get()); length > 0; length--) {
+                    KeyCode code = codes[Short.toUnsignedInt(buffer.getShort())];
+                    keySequence.add(new KeyCodeCombination(code, MODIFIER_VALUES[buffer.get()],
+                            MODIFIER_VALUES[buffer.get()], MODIFIER_VALUES[buffer.get()],
+                            MODIFIER_VALUES[buffer.get()], MODIFIER_VALUES[buffer.get()]));
+                }
+                KeymapAction action = ACTIONS[buffer.get()];
+                byte position = buffer.get();
+                KeymapPosition pos = position < 0 ? null : POSITIONS[position];
+                keymaps.add(new KeyMapping(keySequence, action, readString(buffer), pos));
+            }
+            return keymaps;
+        } catch (NoSuchFileException e) { // Not cached yet.
+            return null;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException
+                | IllegalArgumentException e) { // Unreadable or corrupt cache.
+            return null;
+        }
+    }
+
+    /**
+     * Writes the key mappings to the cache, replacing it atomically.
+     * @param cache The cache file.
+     * @param hash The hash of the keymap file's contents.
+     * @param keymaps The key mappings.
+     * @throws IOException If the cache could not be written.
+     */
+    private static void write(Path cache, byte[] hash, List<KeyMapping> keymaps) throws IOException {
+        Map<KeyCode, Integer> codes = new LinkedHashMap<>();
+        for (KeyMapping keymap : keymaps) {
+            for (KeyCodeCombination combo : keymap.getKeySequence()) {
+                codes.putIfAbsent(combo.getCode(), codes.size());
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(hash.length);
+        out.write(hash);
+        out.writeShort(codes.size());
+        for (KeyCode code : codes.keySet()) {
+            writeString(out, code.name());
+        }
+        out.writeInt(keymaps.size());
+        for (KeyMapping keymap : keymaps) {
+            out.writeByte(keymap.getKeySequence().size());
+            for (KeyCodeCombination combo : keymap.getKeySequence()) {
+                out.writeShort(codes.get(combo.getCode()));
+                out.writeByte(combo.getShift().ordinal());
+                out.writeByte(combo.getControl().ordinal());
+                out.writeByte(combo.getAlt().ordinal());
+                out.writeByte(combo.getMeta().ordinal());
+                out.writeByte(combo.getShortcut().ordinal());
+            }
+            out.writeByte(keymap.getAction().ordinal());
+            out.writeByte(keymap.getPosition() == null ? -1 : keymap.getPosition().ordinal());
+            writeString(out, keymap.getString());
+        }
+
+        Path temp = Files.createTempFile(cache.getParent(), "." + cache.getFileName(), ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            try {
+                Files.move(temp, cache, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a string stored as its length followed by its UTF-8 bytes.
+     * @param buffer The buffer to read from.
+     * @return The string.
+     * @throws BufferUnderflowException If the length is invalid or there are not enough bytes remaining.
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a string as its length followed by its UTF-8 bytes.
+     * @param out The stream to write to.
+     * @param string The string.
+     * @throws IOException If the string could not be written.
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Hashes the contents of a keymap file.
+     * @param source The contents of the file.
+     * @return The hash.
+     */
+    private static byte[] hash(byte[] source) {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM).digest(source);
+        } catch (NoSuchAlgorithmException e) { // Every Java platform supports SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package texteditor.app.controller;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+
+import texteditor.app.ParseException;
+import texteditor.app.TokenMgrError;
+import texteditor.app.model.KeymapTrie;
+
+/**
+ * Watches the keymap file for changes, and parses and compiles the new key mappings on a background thread.
+ * <p>
+ * Changes arriving within a short delay of each other are coalesced, as editors often write a file in several
+ * steps. The compiled key mappings, or the error if the file could not be read or parsed, are passed to the
+ * callbacks on the JavaFX application thread, so they can be swapped in between two key presses.
+ *
+ * @author Rohan Khayech
+ */
+public class KeymapWatcher {
+
+    /** How long to wait for further changes before reloading the file (in milliseconds). */
+    private static final long SETTLE_MILLIS = 100;
+
+    /** The keymap file. */
+    private final Path file;
+    /** Callback receiving the newly compiled key mappings. */
+    private final Consumer<KeymapTrie> onLoaded;
+    /** Callback receiving the error if the file could not be reloaded. */
+    private final Consumer<Throwable> onFailed;
+    /** The thread watching the file, or {@code null} if not started. */
+    private Thread thread;
+
+    /**
+     * Constructs a new KeymapWatcher object.
+     * @param file The keymap file.
+     * @param onLoaded Callback receiving the newly compiled key mappings.
+     * @param onFailed Callback receiving the error if the file could not be reloaded.
+     */
+    public KeymapWatcher(Path file, Consumer<KeymapTrie> onLoaded, Consumer<Throwable> onFailed) {
+        this.file = file.toAbsolutePath();
+        this.onLoaded = onLoaded;
+        this.onFailed = onFailed;
+    }
+
+    /**
+     * Starts watching the keymap file.
+     * @throws IOException If the directory containing the file could not be watched.
+     */
+    public void start() throws IOException {
+        // Watch the directory, as the file may be replaced rather than modified, or not exist yet.
+        WatchService watcher = file.getFileSystem().newWatchService();
+        try {
+            file.getParent().register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+        } catch (IOException e) {
+            watcher.close();
+            throw e;
+        }
+
+        thread = new Thread(() -> watch(watcher), "Keymap watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching the keymap file.
+     */
+    public void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Waits for changes to the keymap file and reloads it, until interrupted.
+     * @param watcher The watch service registered for the file's directory.
+     */
+    private void watch(WatchService watcher) {
+        try (watcher) {
+            while (true) {
+                boolean changed = isChanged(watcher.take());
+
+                // Wait for the file to settle before reading it.
+                WatchKey key;
+                while ((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= isChanged(key);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) { // Stopped watching.
+        } catch (IOException e) { // Errors closing the watch service.
+        }
+    }
+
+    /**
+     * Checks whether the events of the specified watch key include a change to the keymap file, and resets the key.
+     * @param key The signalled watch key.
+     * @return {@code true} if the keymap file may have changed, {@code false} otherwise.
+     */
+    private boolean isChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // Events may have been lost if the watch service overflowed.
+            if (event.kind() == OVERFLOW || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Parses and compiles the keymap file, and passes the result to the callbacks on the application thread.
+     */
+    private void reload() {
+        try {
+            KeymapTrie keymaps = new KeymapTrie(KeymapCache.load(file.toString()));
+            Platform.runLater(() -> onLoaded.accept(keymaps));
+        } catch (IOException | ParseException | TokenMgrError e) { // Keep the current key mappings.
+            Platform.runLater(() -> onFailed.accept(e));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package texteditor.app.controller;
+
+import java.util.Arrays;
+
+import texteditor.api.API;
+
+/**
+ * A recorded sequence of edits made relative to the caret, by key mappings or through the API.
+ * <p>
+ * The edits are stored compactly, as parallel arrays of operations, strings and lengths, rather than
+ * as an object per edit. Replaying the macro makes the same calls through the API, so each edit is
+ * made relative to the caret position at the time of the replay rather than at the time of recording.
+ *
+ * @author Rohan Khayech
+ */
+public class Macro {
+
+    /**
+     * The API edit calls that can be recorded.
+     */
+    public enum Operation {
+        /** {@link API#insertText(String)}. */
+        INSERT_TEXT,
+        /** {@link API#insertTextAtSOL(String)}. */
+        INSERT_TEXT_AT_SOL,
+        /** {@link API#removeTextAtSOL(String)}. */
+        REMOVE_TEXT_AT_SOL,
+        /** {@link API#removeTextBeforeCaret(String)}. */
+        REMOVE_TEXT_BEFORE_CARET,
+        /** {@link API#replaceText(String, int)}. */
+        REPLACE_TEXT
+    }
+
+    /** The operations, by their index in the macro. */
+    private static final Operation[] OPERATIONS = Operation.values();
+    /** The initial capacity of the macro. */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** The index of each recorded operation. */
+    private byte[] operations = new byte[INITIAL_CAPACITY];
+    /** The text of each recorded operation. */
+    private String[] texts = new String[INITIAL_CAPACITY];
+    /** The length of each recorded operation, only used by {@link Operation#REPLACE_TEXT}. */
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    /** The number of recorded operations. */
+    private int size = 0;
+
+    /**
+     * Appends an operation to the macro.
+     * @param operation The API edit call.
+     * @param text The text passed to the call.
+     * @param length The length passed to the call, or 0 if it takes no length.
+     */
+    public void add(Operation operation, String text, int length) {
+        if (size == operations.length) {
+            int capacity = size * 2;
+            operations = Arrays.copyOf(operations, capacity);
+            texts = Arrays.copyOf(texts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        operations[size] = (byte) operation.ordinal();
+        texts[size] = text;
+        lengths[size] = length;
+        size++;
+    }
+
+    /**
+     * Appends all operations of another macro to this macro.
+     * @param macro The macro to append.
+     */
+    public void addAll(Macro macro) {
+        for (int i = 0; i < macro.size; i++) {
+            add(OPERATIONS[macro.operations[i]], macro.texts[i], macro.lengths[i]);
+        }
+    }
+
+    /**
+     * @return The number of recorded operations.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return {@code true} if no operations have been recorded, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Replays the recorded operations in order, by making the same edit calls through the specified API.
+     * @param api The API to make the calls through.
+     */
+    public void replay(API api) {
+        for (int i = 0; i < size; i++) {
+            String text = texts[i];
+            switch (OPERATIONS[operations[i]]) {
+                case INSERT_TEXT:
+                    api.insertText(text);
+                    break;
+                case INSERT_TEXT_AT_SOL:
+                    api.insertTextAtSOL(text);
+                    break;
+                case REMOVE_TEXT_AT_SOL:
+                    api.removeTextAtSOL(text);
+                    break;
+                case REMOVE_TEXT_BEFORE_CARET:
+                    api.removeTextBeforeCaret(text);
+                    break;
+                case REPLACE_TEXT:
+                    api.replaceText(text, lengths[i]);
+                    break;
+            }
+        }
+    }
+}
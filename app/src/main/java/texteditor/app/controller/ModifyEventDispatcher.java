@@ -0,0 +1,86 @@
+package texteditor.app.controller;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+/**
+ * Coalesces notifications of text modification, so that many changes made in quick succession
+ * (eg. pasting, fast typing or plugin edits) result in a single notification.
+ * <p>
+ * By default, pending notifications are delivered once on the next animation pulse, after the
+ * events that caused them have been handled and the caret has settled. Alternatively, a quiet period
+ * can be set, in which case notifications are delivered once no changes have been made for that long.
+ * Must only be used on the JavaFX application thread.
+ *
+ * @author Rohan Khayech
+ */
+public class ModifyEventDispatcher {
+
+    /** The action that delivers the notification. */
+    private final Runnable action;
+    /** Timer used to deliver the notification on the next pulse. */
+    private final AnimationTimer pulseTimer;
+    /** Timer used to deliver the notification after the quiet period. */
+    private final PauseTransition quietTimer = new PauseTransition();
+    /** The time to wait after the last change before notifying, or zero to notify on the next pulse. */
+    private Duration quietPeriod = Duration.ZERO;
+    /** Whether a notification is waiting to be delivered. */
+    private boolean pending = false;
+
+    /**
+     * Constructs a new dispatcher that notifies on the next pulse after a change.
+     * @param action The action that delivers the notification.
+     */
+    public ModifyEventDispatcher(Runnable action) {
+        this.action = action;
+        this.pulseTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                stop();
+                dispatch();
+            }
+        };
+        quietTimer.setOnFinished(event -> dispatch());
+    }
+
+    /**
+     * @return The time to wait after the last change before notifying, or zero if notifying on the next pulse.
+     */
+    public Duration getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    /**
+     * Sets the time to wait after the last change before notifying.
+     * @param quietPeriod The quiet period, or {@link Duration#ZERO} to notify on the next pulse.
+     */
+    public void setQuietPeriod(Duration quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    /**
+     * Schedules a notification, if one is not already pending. When using a quiet period,
+     * the period is restarted.
+     */
+    public void schedule() {
+        pending = true;
+        if (quietPeriod.greaterThan(Duration.ZERO)) {
+            quietTimer.setDuration(quietPeriod);
+            quietTimer.playFromStart();
+        } else {
+            pulseTimer.start();
+        }
+    }
+
+    /**
+     * Delivers the pending notification.
+     */
+    private void dispatch() {
+        if (pending) {
+            // Changes made by the action schedule a new notification.
+            pending = false;
+            action.run();
+        }
+    }
+}
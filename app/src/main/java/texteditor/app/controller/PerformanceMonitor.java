@@ -0,0 +1,95 @@
+package texteditor.app.controller;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.util.Duration;
+
+import texteditor.app.model.LatencyHistogram;
+
+/**
+ * Times the callbacks of each plugin and script, as well as the editor's own file and keymap operations,
+ * so that the cause of sluggish typing can be found without attaching a profiler.
+ * <p>
+ * A latency histogram is kept for each plugin, script and operation, counting how often it took longer
+ * than the per-keystroke budget. Durations may be recorded from any thread.
+ *
+ * @author Rohan Khayech
+ */
+public class PerformanceMonitor {
+
+    /**
+     * The editor's own operations that are timed.
+     */
+    public enum Operation {
+        /** Loading a file into the document. */
+        LOAD_FILE,
+        /** Saving the document to a file. */
+        SAVE_FILE,
+        /** Performing the action of a custom key mapping. */
+        KEYMAP_ACTION
+    }
+
+    /** The default per-keystroke budget, about one frame at 60 frames per second. */
+    public static final Duration DEFAULT_BUDGET = Duration.millis(16);
+
+    /** The histogram of each plugin, script or operation timed, by its source. */
+    private final Map<Object, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    /** The longest a callback should take (in nanoseconds). */
+    private volatile long budget = toNanos(DEFAULT_BUDGET);
+
+    /**
+     * @return The longest a callback should take before it is reported as slow.
+     */
+    public Duration getBudget() {
+        return Duration.millis(budget / 1e6);
+    }
+
+    /**
+     * Sets the longest a callback should take before it is reported as slow.
+     * @param budget The per-keystroke budget.
+     */
+    public void setBudget(Duration budget) {
+        this.budget = toNanos(budget);
+    }
+
+    /**
+     * Records how long the specified plugin, script or operation took.
+     * @param source The plugin, script or {@link Operation} that was timed.
+     * @param nanos The duration (in nanoseconds).
+     */
+    public void record(Object source, long nanos) {
+        histograms.computeIfAbsent(source, key -> new LatencyHistogram()).record(nanos, budget);
+    }
+
+    /**
+     * Runs and times the specified action.
+     * @param source The plugin, script or {@link Operation} the action belongs to.
+     * @param action The action to run.
+     */
+    public void time(Object source, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            record(source, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the histogram of the specified plugin, script or operation.
+     * @param source The plugin, script or {@link Operation}.
+     * @return The histogram, or {@code null} if it has not been timed.
+     */
+    public LatencyHistogram getHistogram(Object source) {
+        return histograms.get(source);
+    }
+
+    /**
+     * Converts a duration to nanoseconds.
+     * @param duration The duration.
+     * @return The duration in nanoseconds.
+     */
+    private static long toNanos(Duration duration) {
+        return (long) (duration.toMillis() * 1e6);
+    }
+}
@@ -67,13 +67,29 @@ public class PluginManager {
      * @throws IllegalArgumentException If there is an error loading the plugin.
      */
     public void loadPlugin(String className) throws IllegalArgumentException {
+        PluginStartEvent event = new PluginStartEvent();
+        event.begin();
+        boolean succeeded = false;
         try {
             Class<?> cls = Class.forName(className);
             Plugin plugin = (Plugin) cls.getConstructor().newInstance();
             plugins.add(plugin);
-            plugin.start(api);
+            // Attribute the plugin's callbacks to it, so they can be timed.
+            api.setLoadingOwner(plugin);
+            try {
+                plugin.start(api);
+            } finally {
+                api.setLoadingOwner(null);
+            }
+            succeeded = true;
         } catch (ReflectiveOperationException | ClassCastException e) {
             throw new IllegalArgumentException(bundle.getString("error_loading_plugin"));
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.set(className, succeeded);
+                event.commit();
+            }
         }
     }
 
@@ -96,8 +112,22 @@ public class PluginManager {
         interpreter.set("api", api);
         // Bind the script object to the script environment, to allow script to report its name.
         interpreter.set("script",script);
-        // Run the script
-        interpreter.exec(code);
+        // Run the script, attributing its callbacks to it so they can be timed.
+        ScriptExecutionEvent event = new ScriptExecutionEvent();
+        event.begin();
+        boolean succeeded = false;
+        api.setLoadingOwner(script);
+        try {
+            interpreter.exec(code);
+            succeeded = true;
+        } finally {
+            api.setLoadingOwner(null);
+            event.end();
+            if (event.shouldCommit()) {
+                event.set(file.getPath(), script.getName(), succeeded);
+                event.commit();
+            }
+        }
 
         // Close the interpreter once finished
         interpreter.close();
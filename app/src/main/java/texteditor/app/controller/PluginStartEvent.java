@@ -0,0 +1,37 @@
+package texteditor.app.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event recording the loading and starting of a plugin.
+ *
+ * @author Rohan Khayech
+ */
+@Name("texteditor.PluginStart")
+@Label("Plugin Start")
+@Category({"Text Editor", "Plugins"})
+@Description("A plugin class was loaded and started")
+public class PluginStartEvent extends Event {
+
+    /** The fully qualified name of the plugin class. */
+    @Label("Class Name")
+    private String className;
+
+    /** Whether the plugin was loaded successfully. */
+    @Label("Succeeded")
+    private boolean succeeded;
+
+    /**
+     * Sets the details of the plugin.
+     * @param className The fully qualified name of the plugin class.
+     * @param succeeded Whether the plugin was loaded successfully.
+     */
+    public void set(String className, boolean succeeded) {
+        this.className = className;
+        this.succeeded = succeeded;
+    }
+}
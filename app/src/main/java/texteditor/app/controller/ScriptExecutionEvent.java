@@ -0,0 +1,43 @@
+package texteditor.app.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event recording the loading and execution of a script.
+ *
+ * @author Rohan Khayech
+ */
+@Name("texteditor.ScriptExecution")
+@Label("Script Execution")
+@Category({"Text Editor", "Plugins"})
+@Description("A Python script was loaded and executed")
+public class ScriptExecutionEvent extends Event {
+
+    /** The path of the script file. */
+    @Label("Path")
+    private String path;
+
+    /** The name reported by the script. */
+    @Label("Script Name")
+    private String scriptName;
+
+    /** Whether the script ran without error. */
+    @Label("Succeeded")
+    private boolean succeeded;
+
+    /**
+     * Sets the details of the script.
+     * @param path The path of the script file.
+     * @param scriptName The name reported by the script.
+     * @param succeeded Whether the script ran without error.
+     */
+    public void set(String path, String scriptName, boolean succeeded) {
+        this.path = path;
+        this.scriptName = scriptName;
+        this.succeeded = succeeded;
+    }
+}
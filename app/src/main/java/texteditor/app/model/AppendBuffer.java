@@ -0,0 +1,228 @@
+package texteditor.app.model;
+
+import java.util.Arrays;
+
+/**
+ * Append-only character buffer used as the add buffer of a {@link Document}.
+ * <p>
+ * Characters are stored in fixed-size chunks whose characters are never modified once written, so a
+ * snapshot of the buffer can share its chunks and be read from another thread while more characters
+ * are appended to the original buffer.
+ * <p>
+ * A compact buffer stores each chunk as a {@code byte[]} while it only contains Latin-1 characters,
+ * halving the memory used by ASCII-heavy text. A chunk is widened to a {@code char[]} the first time a
+ * character outside of Latin-1 is appended to it, which replaces the chunk rather than modifying it,
+ * so existing snapshots are unaffected.
+ *
+ * @author Rohan Khayech
+ */
+public class AppendBuffer implements CharSequence {
+
+    /** The number of bits used to index a character within a chunk. */
+    private static final int CHUNK_BITS = 14;
+    /** The number of characters in each chunk. */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    /** Mask used to find the index of a character within its chunk. */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** The chunks of characters, each either a {@code byte[]} of Latin-1 characters or a {@code char[]}. */
+    private Object[] chunks;
+    /** The number of characters in the buffer. */
+    private int length;
+    /** Whether Latin-1 chunks are stored as bytes. */
+    private final boolean compact;
+    /** Whether the buffer is a read-only snapshot. */
+    private final boolean readOnly;
+
+    /**
+     * Constructs a new empty buffer that stores all characters as UTF-16.
+     */
+    public AppendBuffer() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new empty buffer.
+     * @param compact {@code true} to store chunks containing only Latin-1 characters as bytes.
+     */
+    public AppendBuffer(boolean compact) {
+        this.chunks = new Object[4];
+        this.length = 0;
+        this.compact = compact;
+        this.readOnly = false;
+    }
+
+    /**
+     * Constructs a read-only snapshot sharing the specified chunks.
+     * @param chunks The chunks of characters.
+     * @param length The number of characters in the snapshot.
+     * @param compact Whether Latin-1 chunks are stored as bytes.
+     */
+    private AppendBuffer(Object[] chunks, int length, boolean compact) {
+        this.chunks = chunks;
+        this.length = length;
+        this.compact = compact;
+        this.readOnly = true;
+    }
+
+    /**
+     * @return {@code true} if chunks containing only Latin-1 characters are stored as bytes, {@code false} otherwise.
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * @return The number of characters in the buffer.
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the character at the specified index.
+     * @param index The index of the character.
+     * @return The character at the index.
+     * @throws IndexOutOfBoundsException If the index is not within the buffer.
+     */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        Object chunk = chunks[index >>> CHUNK_BITS];
+        if (chunk instanceof byte[]) {
+            return (char) (((byte[]) chunk)[index & CHUNK_MASK] & 0xFF);
+        }
+        return ((char[]) chunk)[index & CHUNK_MASK];
+    }
+
+    /**
+     * Returns a copy of the characters between the specified indexes.
+     * @param start The start index (inclusive).
+     * @param end The end index (exclusive).
+     * @return A string containing the characters in the range.
+     * @throws IndexOutOfBoundsException If the range is not within the buffer.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Copies the characters between the specified indexes into an array.
+     * @param start The start index (inclusive).
+     * @param end The end index (exclusive).
+     * @param dst The array to copy into.
+     * @param dstBegin The index in the array to start copying to.
+     * @throws IndexOutOfBoundsException If the range is not within the buffer.
+     */
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(String.format("Range [%d, %d) out of bounds for length %d", start, end, length));
+        }
+        while (start < end) {
+            int offset = start & CHUNK_MASK;
+            int count = Math.min(end - start, CHUNK_SIZE - offset);
+            Object chunk = chunks[start >>> CHUNK_BITS];
+            if (chunk instanceof byte[]) {
+                byte[] bytes = (byte[]) chunk;
+                for (int i = 0; i < count; i++) {
+                    dst[dstBegin + i] = (char) (bytes[offset + i] & 0xFF);
+                }
+            } else {
+                System.arraycopy(chunk, offset, dst, dstBegin, count);
+            }
+            start += count;
+            dstBegin += count;
+        }
+    }
+
+    /**
+     * Appends the specified text to the end of the buffer.
+     * @param text The text to append.
+     * @throws UnsupportedOperationException If the buffer is a read-only snapshot.
+     */
+    public void append(String text) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Cannot append to a snapshot.");
+        }
+        int pos = 0;
+        while (pos < text.length()) {
+            int chunk = length >>> CHUNK_BITS;
+            if (chunk == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            }
+            int offset = length & CHUNK_MASK;
+            int count = Math.min(text.length() - pos, CHUNK_SIZE - offset);
+            boolean latin1 = compact && isLatin1(text, pos, pos + count);
+
+            if (chunks[chunk] == null) {
+                chunks[chunk] = latin1 ? new byte[CHUNK_SIZE] : new char[CHUNK_SIZE];
+            } else if (chunks[chunk] instanceof byte[] && !latin1) {
+                chunks[chunk] = widen((byte[]) chunks[chunk], offset);
+            }
+
+            if (chunks[chunk] instanceof byte[]) {
+                byte[] bytes = (byte[]) chunks[chunk];
+                for (int i = 0; i < count; i++) {
+                    bytes[offset + i] = (byte) text.charAt(pos + i);
+                }
+            } else {
+                text.getChars(pos, pos + count, (char[]) chunks[chunk], offset);
+            }
+            pos += count;
+            length += count;
+        }
+    }
+
+    /**
+     * Returns a read-only snapshot of the buffer's current contents, sharing its chunks.
+     * @return The snapshot.
+     */
+    public AppendBuffer snapshot() {
+        // Copy the chunk references, as appending may replace the last chunk with a widened copy.
+        return new AppendBuffer(Arrays.copyOf(chunks, (length + CHUNK_MASK) >>> CHUNK_BITS), length, compact);
+    }
+
+    /**
+     * Checks whether the characters between the specified indexes are all Latin-1 characters.
+     * @param text The text to check.
+     * @param start The start index (inclusive).
+     * @param end The end index (exclusive).
+     * @return {@code true} if every character fits in a single byte, {@code false} otherwise.
+     */
+    private static boolean isLatin1(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies a chunk of Latin-1 characters into a new UTF-16 chunk.
+     * @param bytes The Latin-1 chunk.
+     * @param count The number of characters written to the chunk.
+     * @return The widened chunk.
+     */
+    private static char[] widen(byte[] bytes, int count) {
+        char[] chars = new char[CHUNK_SIZE];
+        for (int i = 0; i < count; i++) {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        return chars;
+    }
+
+    /**
+     * @return A string containing a copy of the buffer's contents.
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
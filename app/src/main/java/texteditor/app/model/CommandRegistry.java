@@ -0,0 +1,163 @@
+package texteditor.app.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination.ModifierValue;
+import javafx.scene.input.KeyEvent;
+
+import texteditor.app.model.KeyMapping.KeymapAction;
+
+/**
+ * Registry of the named commands added by plugins and scripts, and the keys bound to them.
+ * <p>
+ * Each key is bound to at most one command, so a key press invokes a single command rather than being
+ * broadcast to every plugin. The bindings are indexed in a {@link KeymapTrie}, so finding the command bound
+ * to a key press takes constant time. The registry is not thread-safe, and is used on the JavaFX application
+ * thread, or by a single thread in batch mode.
+ *
+ * @author Rohan Khayech
+ */
+public class CommandRegistry {
+
+    /** The function keys, by their number minus one. */
+    private static final KeyCode[] FUNCTION_KEYS = new KeyCode[24];
+    /** The number of each function key. */
+    private static final Map<KeyCode, Integer> FUNCTION_KEY_NUMBERS = new EnumMap<>(KeyCode.class);
+
+    static {
+        for (int i = 0; i < FUNCTION_KEYS.length; i++) {
+            FUNCTION_KEYS[i] = KeyCode.valueOf("F" + (i + 1));
+            FUNCTION_KEY_NUMBERS.put(FUNCTION_KEYS[i], i + 1);
+        }
+    }
+
+    /** The registered commands, by name. */
+    private final Map<String, Runnable> commands = new LinkedHashMap<>();
+    /** The command bound to each key combination, in the order they were bound. */
+    private final Map<KeyCodeCombination, String> bindings = new LinkedHashMap<>();
+    /** Lookup table of the bindings. */
+    private KeymapTrie table = new KeymapTrie(List.of());
+
+    /**
+     * Returns the key combination of the specified function key pressed without shift, control or alt,
+     * matching the key combinations read from the keymap file.
+     * @param keyNum The number of the function key, from 1 to 24.
+     * @return The key combination.
+     * @throws IllegalArgumentException If there is no function key with the number.
+     */
+    public static KeyCodeCombination functionKey(int keyNum) {
+        if (keyNum < 1 || keyNum > FUNCTION_KEYS.length) {
+            throw new IllegalArgumentException("No function key F" + keyNum);
+        }
+        return new KeyCodeCombination(FUNCTION_KEYS[keyNum - 1], ModifierValue.UP, ModifierValue.UP,
+                ModifierValue.UP, ModifierValue.ANY, ModifierValue.ANY);
+    }
+
+    /**
+     * Returns the number of the specified function key.
+     * @param code The key code.
+     * @return The number of the function key, or 0 if the key is not a function key.
+     */
+    public static int getFunctionKeyNumber(KeyCode code) {
+        return FUNCTION_KEY_NUMBERS.getOrDefault(code, 0);
+    }
+
+    /**
+     * Registers a named command, replacing any command already registered with the name.
+     * @param name The name of the command.
+     * @param command The action invoking the command.
+     */
+    public void register(String name, Runnable command) {
+        commands.put(name, command);
+    }
+
+    /**
+     * Invokes the command with the specified name.
+     * @param name The name of the command.
+     * @return {@code true} if the command was invoked, {@code false} if no command is registered with the name.
+     */
+    public boolean invoke(String name) {
+        Runnable command = commands.get(name);
+        if (command == null) {
+            return false;
+        }
+        command.run();
+        return true;
+    }
+
+    /**
+     * @return The names of the registered commands, in the order they were registered.
+     */
+    public Set<String> getCommandNames() {
+        return Collections.unmodifiableSet(commands.keySet());
+    }
+
+    /**
+     * Binds the specified key combination to a command, replacing any command already bound to it.
+     * The command does not need to be registered yet.
+     * @param key The key combination.
+     * @param command The name of the command.
+     */
+    public void bind(KeyCodeCombination key, String command) {
+        bindings.put(key, command);
+        rebuild();
+    }
+
+    /**
+     * Removes the binding of the specified key combination, if any.
+     * @param key The key combination.
+     */
+    public void unbind(KeyCodeCombination key) {
+        if (bindings.remove(key) != null) {
+            rebuild();
+        }
+    }
+
+    /**
+     * @return The command bound to each key combination, in the order they were bound.
+     */
+    public Map<KeyCodeCombination, String> getBindings() {
+        return Collections.unmodifiableMap(bindings);
+    }
+
+    /**
+     * Returns the command bound to the specified key combination.
+     * @param key The key combination.
+     * @return The name of the command, or {@code null} if the key is not bound.
+     */
+    public String getCommand(KeyCodeCombination key) {
+        return bindings.get(key);
+    }
+
+    /**
+     * Returns the command bound to the specified key press.
+     * @param keyEvent The key press event.
+     * @return The name of the command, or {@code null} if the key is not bound.
+     */
+    public String getCommand(KeyEvent keyEvent) {
+        KeymapTrie.Node node = table.getRoot().next(keyEvent);
+        if (node == null) {
+            return null;
+        }
+        KeyMapping[] matches = node.getMappings(keyEvent);
+        return matches.length == 0 ? null : matches[0].getString();
+    }
+
+    /**
+     * Rebuilds the lookup table after the bindings have changed.
+     */
+    private void rebuild() {
+        List<KeyMapping> mappings = new ArrayList<>();
+        for (Map.Entry<KeyCodeCombination, String> binding : bindings.entrySet()) {
+            mappings.add(new KeyMapping(binding.getKey(), KeymapAction.COMMAND, binding.getValue(), null));
+        }
+        table = new KeymapTrie(mappings);
+    }
+}
@@ -0,0 +1,574 @@
+package texteditor.app.model;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Piece table model that owns the edited text.
+ * <p>
+ * The text loaded into the document is kept in a read-only original buffer and any inserted text is
+ * appended to a separate add buffer. The contents of the document are described by an ordered list of
+ * pieces, each referencing a span of one of the buffers. Inserting or deleting text only splits and
+ * trims pieces, so edits cost O(pieces) rather than O(document length). A {@link LineIndex} is
+ * updated alongside each edit to answer line queries without scanning the text.
+ * <p>
+ * As the buffers are never modified once written, an immutable snapshot of the document can be
+ * taken in O(pieces) by copying the piece list, and read on another thread while editing continues.
+ *
+ * @author Rohan Khayech
+ */
+public class Document implements CharSequence {
+
+    /**
+     * A span of text within one of the document's buffers.
+     */
+    private static class Piece {
+        /** {@code true} if the span is in the add buffer, {@code false} if in the original buffer. */
+        private final boolean added;
+        /** The index of the first character of the span within its buffer. */
+        private final int start;
+        /** The number of characters in the span. */
+        private final int length;
+
+        /**
+         * Constructs a new piece.
+         * @param added {@code true} if the span is in the add buffer, {@code false} if in the original buffer.
+         * @param start The index of the first character of the span within its buffer.
+         * @param length The number of characters in the span.
+         */
+        private Piece(boolean added, int start, int length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Returns a piece referencing part of this piece's span.
+         * @param from The start of the sub-span, relative to this piece.
+         * @param to The end of the sub-span (exclusive), relative to this piece.
+         * @return The new piece.
+         */
+        private Piece slice(int from, int to) {
+            return new Piece(added, start + from, to - from);
+        }
+    }
+
+    /** The read-only buffer containing the text the document was created with. */
+    private CharSequence original;
+    /** The append-only buffer containing all text inserted into the document. */
+    private AppendBuffer added;
+    /** The ordered list of pieces describing the document's contents. */
+    private List<Piece> pieces;
+    /** The number of characters in the document. */
+    private int length;
+    /** Index of the start offset of each line. */
+    private LineIndex lines;
+    /** Counter incremented each time the document is modified. */
+    private long version = 0;
+    /** Whether the document is a read-only snapshot. */
+    private boolean readOnly = false;
+    /** Whether inserted Latin-1 text is stored as bytes. */
+    private boolean compact = false;
+
+    /** The longest removed text copied for listeners, beyond which they are passed a view of a snapshot instead. */
+    private static final int REMOVED_COPY_LIMIT = 4096;
+
+    /** Index of the most recently accessed piece, used to speed up sequential character access. */
+    private int cachedPiece = 0;
+    /** Document offset of the start of the most recently accessed piece. */
+    private int cachedPieceStart = 0;
+
+    /** List of listeners notified when the document changes. */
+    private List<DocumentListener> listeners = new LinkedList<>();
+
+    /**
+     * Constructs a new empty document.
+     */
+    public Document() {
+        this("");
+    }
+
+    /**
+     * Constructs a new document containing the specified text.
+     * @param text The initial contents of the document.
+     */
+    public Document(CharSequence text) {
+        reset(text, new LineIndex(text));
+    }
+
+    /**
+     * Constructs a read-only snapshot of a document's state, sharing its buffers.
+     * @param original The original buffer.
+     * @param added A snapshot of the add buffer.
+     * @param pieces The piece list to copy.
+     * @param length The number of characters in the document.
+     * @param lines A snapshot of the line index, or {@code null} if the snapshot's lines are never read.
+     * @param version The version of the document.
+     */
+    private Document(CharSequence original, AppendBuffer added, List<Piece> pieces, int length, LineIndex lines, long version) {
+        this.original = original;
+        this.added = added;
+        this.pieces = new ArrayList<>(pieces);
+        this.length = length;
+        this.lines = lines;
+        this.version = version;
+        this.readOnly = true;
+        this.compact = added.isCompact();
+    }
+
+    /**
+     * Returns an immutable snapshot of the document's current contents.
+     * <p>
+     * The snapshot shares the document's buffers and line index, so taking it only costs O(pieces), and it
+     * can be read from another thread while the document continues to be edited. The line index is copied
+     * by the document the next time it is edited. A snapshot should only be read by one thread at a time.
+     * @return A read-only copy of the document.
+     */
+    public Document snapshot() {
+        return new Document(original, added.snapshot(), pieces, length, lines.snapshot(), version);
+    }
+
+    /**
+     * Returns a new writable document with the same contents, whose edits do not affect this document.
+     * <p>
+     * The new document reads its original text from a snapshot of this document and shares its line index
+     * until first edited, so forking costs O(pieces) rather than rescanning the text. The new document has
+     * no listeners, and starts at the same version as this document.
+     * @return The new document.
+     */
+    public Document fork() {
+        Document base = readOnly ? this : snapshot();
+        Document fork = new Document();
+        fork.compact = base.compact;
+        fork.reset(base, base.lines.snapshot());
+        fork.version = base.version;
+        return fork;
+    }
+
+    /**
+     * @return {@code true} if the document is a read-only snapshot, {@code false} otherwise.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @return {@code true} if inserted text containing only Latin-1 characters is stored as bytes, {@code false} otherwise.
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Sets whether inserted text containing only Latin-1 characters is stored as bytes rather than UTF-16,
+     * halving the memory used by ASCII-heavy documents. Takes effect the next time the full contents of
+     * the document are replaced.
+     * @param compact {@code true} to store Latin-1 text as bytes.
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Adds a listener that is notified whenever the document changes.
+     * @param listener The listener to add.
+     */
+    public void addListener(DocumentListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously added document listener.
+     * @param listener The listener to remove.
+     */
+    public void removeListener(DocumentListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return The number of characters in the document.
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the character at the specified offset.
+     * @param index The offset of the character.
+     * @return The character at the offset.
+     * @throws IndexOutOfBoundsException If the index is negative or not less than the document length.
+     */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        seek(index);
+        Piece piece = pieces.get(cachedPiece);
+        return buffer(piece).charAt(piece.start + index - cachedPieceStart);
+    }
+
+    /**
+     * Returns a read-only view of the text between the specified offsets, without copying it.
+     * The view is only valid until the document is next modified.
+     * @param start The start offset (inclusive).
+     * @param end The end offset (exclusive).
+     * @return A window over the text in the range.
+     * @throws IndexOutOfBoundsException If the range is not within the document.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        checkRange(start, end);
+        return new DocumentWindow(this, start, end);
+    }
+
+    /**
+     * @return The version of the document, which is incremented each time the document is modified.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The number of lines in the document.
+     */
+    public int getLineCount() {
+        return lines.getLineCount();
+    }
+
+    /**
+     * Returns the line containing the specified offset.
+     * @param offset An offset within the document, between 0 and the document length inclusive.
+     * @return The zero-based index of the line containing the offset.
+     * @throws IndexOutOfBoundsException If the offset is not within the document.
+     */
+    public int getLineOfOffset(int offset) {
+        return lines.getLineOfOffset(offset);
+    }
+
+    /**
+     * Returns the offset of the start of the specified line.
+     * @param line The zero-based index of the line.
+     * @return The offset of the first character of the line.
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    public int getLineStart(int line) {
+        return lines.getLineStart(line);
+    }
+
+    /**
+     * @return The read-only buffer containing the text the document was created with.
+     */
+    public CharSequence getOriginal() {
+        return original;
+    }
+
+    /**
+     * Returns the length of the longest prefix of the document that is unchanged from the original buffer,
+     * determined from the pieces referencing the original buffer rather than by comparing the text.
+     * @return The number of characters at the start of the document that are the same as the original buffer.
+     */
+    public int getOriginalPrefix() {
+        int prefix = 0;
+        for (Piece piece : pieces) {
+            if (piece.added || piece.start != prefix) {
+                break;
+            }
+            prefix += piece.length;
+        }
+        return prefix;
+    }
+
+    /**
+     * Returns the length of the longest suffix of the document that is unchanged from the original buffer,
+     * determined from the pieces referencing the original buffer rather than by comparing the text.
+     * @return The number of characters at the end of the document that are the same as the original buffer.
+     */
+    public int getOriginalSuffix() {
+        int suffix = 0;
+        for (int i = pieces.size() - 1; i >= 0; i--) {
+            Piece piece = pieces.get(i);
+            if (piece.added || piece.start + piece.length != original.length() - suffix) {
+                break;
+            }
+            suffix += piece.length;
+        }
+        return suffix;
+    }
+
+    /**
+     * @return A string containing the full contents of the document.
+     */
+    public String getText() {
+        return getText(0, length);
+    }
+
+    /**
+     * Returns the text between the specified offsets.
+     * @param start The start offset (inclusive).
+     * @param end The end offset (exclusive).
+     * @return A string containing the text in the range.
+     * @throws IndexOutOfBoundsException If the range is not within the document.
+     */
+    public String getText(int start, int end) {
+        checkRange(start, end);
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Copies the text between the specified offsets into an array.
+     * @param start The start offset (inclusive).
+     * @param end The end offset (exclusive).
+     * @param dst The array to copy into.
+     * @param dstBegin The index in the array to start copying to.
+     * @throws IndexOutOfBoundsException If the range is not within the document.
+     */
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        checkRange(start, end);
+        if (start < end) {
+            seek(start);
+            int i = cachedPiece;
+            int pos = cachedPieceStart;
+            while (pos < end) {
+                Piece piece = pieces.get(i);
+                int from = piece.start + Math.max(start, pos) - pos;
+                int to = piece.start + Math.min(end, pos + piece.length) - pos;
+                if (piece.added) {
+                    added.getChars(from, to, dst, dstBegin);
+                } else if (original instanceof String) {
+                    ((String) original).getChars(from, to, dst, dstBegin);
+                } else {
+                    for (int c = from; c < to; c++) {
+                        dst[dstBegin + c - from] = original.charAt(c);
+                    }
+                }
+                dstBegin += to - from;
+                pos += piece.length;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Replaces the full contents of the document with the specified text.
+     * @param text The text to set.
+     */
+    public void setText(CharSequence text) {
+        setText(text, new LineIndex(text));
+    }
+
+    /**
+     * Replaces the full contents of the document with the specified text, using a line index
+     * that has already been built for the text (eg. on a background thread).
+     * @param text The text to set.
+     * @param lines The line index of the text.
+     * @throws UnsupportedOperationException If the document is a read-only snapshot.
+     */
+    public void setText(CharSequence text, LineIndex lines) {
+        checkWritable();
+        Document old = snapshot();
+        reset(text, lines);
+        version++;
+        fireChanged(0, old, text);
+    }
+
+    /**
+     * Inserts the specified text at the specified offset.
+     * @param offset The offset to insert the text at.
+     * @param text The text to insert.
+     * @throws IndexOutOfBoundsException If the offset is not within the document.
+     */
+    public void insert(int offset, String text) {
+        replace(offset, offset, text);
+    }
+
+    /**
+     * Deletes the text between the specified offsets.
+     * @param start The start offset (inclusive).
+     * @param end The end offset (exclusive).
+     * @throws IndexOutOfBoundsException If the range is not within the document.
+     */
+    public void delete(int start, int end) {
+        replace(start, end, "");
+    }
+
+    /**
+     * Replaces the text between the specified offsets with the specified text.
+     * @param start The start offset (inclusive).
+     * @param end The end offset (exclusive).
+     * @param text The text to insert in place of the range.
+     * @throws IndexOutOfBoundsException If the range is not within the document.
+     * @throws UnsupportedOperationException If the document is a read-only snapshot.
+     */
+    public void replace(int start, int end, String text) {
+        checkWritable();
+        checkRange(start, end);
+        if (start == end && text.isEmpty()) {
+            return;
+        }
+        // Copy short removed text for the listeners, but only pass a view of long text, so that deleting
+        // most of a large file does not copy it, unless a listener needs it.
+        CharSequence removed = end - start <= REMOVED_COPY_LIMIT ? getText(start, end) : snapshotText(start, end);
+
+        // Find the piece containing the start offset.
+        int i = 0;
+        int pos = 0;
+        while (i < pieces.size() && pos + pieces.get(i).length <= start) {
+            pos += pieces.get(i).length;
+            i++;
+        }
+
+        if (start == end && start == pos && i > 0 && isAppendable(pieces.get(i - 1))) {
+            // Typing extends the piece that was last appended to, rather than creating a new piece.
+            Piece prev = pieces.get(i - 1);
+            added.append(text);
+            pieces.set(i - 1, new Piece(true, prev.start, prev.length + text.length()));
+        } else {
+            List<Piece> replacement = new ArrayList<>(3);
+
+            // Keep the part of the first piece before the range.
+            if (i < pieces.size() && start > pos) {
+                replacement.add(pieces.get(i).slice(0, start - pos));
+            }
+
+            // Reference the inserted text in the add buffer.
+            if (!text.isEmpty()) {
+                replacement.add(new Piece(true, added.length(), text.length()));
+                added.append(text);
+            }
+
+            // Skip pieces entirely within the range.
+            int j = i;
+            int pieceStart = pos;
+            while (j < pieces.size() && pieceStart + pieces.get(j).length <= end) {
+                pieceStart += pieces.get(j).length;
+                j++;
+            }
+
+            // Keep the part of the last piece after the range.
+            if (j < pieces.size() && end > pieceStart) {
+                Piece last = pieces.get(j);
+                replacement.add(last.slice(end - pieceStart, last.length));
+                j++;
+            }
+
+            List<Piece> replaced = pieces.subList(i, j);
+            replaced.clear();
+            replaced.addAll(replacement);
+        }
+
+        length += text.length() - removed.length();
+        lines.update(start, removed.length(), text);
+        cachedPiece = 0;
+        cachedPieceStart = 0;
+        version++;
+        fireChanged(start, removed, text);
+    }
+
+    /**
+     * @return A string containing the full contents of the document.
+     */
+    @Override
+    public String toString() {
+        return getText();
+    }
+
+    /**
+     * Resets the document to a single piece spanning the specified text.
+     * @param text The new original buffer.
+     * @param lines The line index of the text.
+     */
+    private void reset(CharSequence text, LineIndex lines) {
+        original = text;
+        added = new AppendBuffer(compact);
+        pieces = new ArrayList<>();
+        if (text.length() > 0) {
+            pieces.add(new Piece(false, 0, text.length()));
+        }
+        length = text.length();
+        this.lines = lines;
+        cachedPiece = 0;
+        cachedPieceStart = 0;
+    }
+
+    /**
+     * Returns a view of the text between the specified offsets that remains valid after the document is
+     * modified, by reading from a snapshot of the buffers. The snapshot has no line index, so taking it
+     * does not cause the line index to be copied when the document is next modified.
+     * @param start The start offset (inclusive).
+     * @param end The end offset (exclusive).
+     * @return A window over the text in the range.
+     */
+    private CharSequence snapshotText(int start, int end) {
+        return new Document(original, added.snapshot(), pieces, length, null, version).subSequence(start, end);
+    }
+
+    /**
+     * Checks that the document can be modified.
+     * @throws UnsupportedOperationException If the document is a read-only snapshot.
+     */
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Cannot modify a document snapshot.");
+        }
+    }
+
+    /**
+     * Moves the piece cache to the piece containing the specified offset.
+     * @param index An offset within the document.
+     */
+    private void seek(int index) {
+        while (index < cachedPieceStart) {
+            cachedPiece--;
+            cachedPieceStart -= pieces.get(cachedPiece).length;
+        }
+        while (index >= cachedPieceStart + pieces.get(cachedPiece).length) {
+            cachedPieceStart += pieces.get(cachedPiece).length;
+            cachedPiece++;
+        }
+    }
+
+    /**
+     * @param piece A piece within the document.
+     * @return The buffer referenced by the piece.
+     */
+    private CharSequence buffer(Piece piece) {
+        return piece.added ? added : original;
+    }
+
+    /**
+     * @param piece A piece within the document.
+     * @return {@code true} if the piece ends at the end of the add buffer, so can be extended in place.
+     */
+    private boolean isAppendable(Piece piece) {
+        return piece.added && piece.start + piece.length == added.length();
+    }
+
+    /**
+     * Checks that the specified range is within the document.
+     * @param start The start offset (inclusive).
+     * @param end The end offset (exclusive).
+     * @throws IndexOutOfBoundsException If the range is not within the document.
+     */
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(String.format("Range [%d, %d) out of bounds for length %d", start, end, length));
+        }
+    }
+
+    /**
+     * Notifies all listeners that the document has changed.
+     * @param offset The position in the document where the change occurred.
+     * @param removedText The text that was removed.
+     * @param insertedText The text that was inserted.
+     */
+    private void fireChanged(int offset, CharSequence removedText, CharSequence insertedText) {
+        for (DocumentListener listener : listeners) {
+            listener.onDocumentChanged(offset, removedText, insertedText);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package texteditor.app.model;
+
+/**
+ * Listener notified when the contents of a {@link Document} change.
+ *
+ * @author Rohan Khayech
+ */
+public interface DocumentListener {
+
+    /**
+     * Called after a range of the document has been replaced.
+     *
+     * @param offset       The position in the document where the change occurred.
+     * @param removedText  The text that was removed from the document at the offset. Long removed text is
+     *                     read lazily, so should only be copied if needed.
+     * @param insertedText The text that was inserted into the document at the offset.
+     */
+    void onDocumentChanged(int offset, CharSequence removedText, CharSequence insertedText);
+}
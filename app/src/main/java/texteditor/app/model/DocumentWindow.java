@@ -0,0 +1,98 @@
+package texteditor.app.model;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * Read-only view of a range of a {@link Document}.
+ * <p>
+ * Characters are read directly from the document's buffers rather than being copied. A window is only
+ * valid until the document is next modified, after which accessing it throws a
+ * {@link ConcurrentModificationException}.
+ *
+ * @author Rohan Khayech
+ */
+public class DocumentWindow implements CharSequence {
+
+    /** The document being viewed. */
+    private final Document document;
+    /** The document offset of the start of the window (inclusive). */
+    private final int start;
+    /** The document offset of the end of the window (exclusive). */
+    private final int end;
+    /** The version of the document when the window was created. */
+    private final long version;
+
+    /**
+     * Constructs a new window over the specified range of a document.
+     * @param document The document to view.
+     * @param start The document offset of the start of the window (inclusive).
+     * @param end The document offset of the end of the window (exclusive).
+     */
+    DocumentWindow(Document document, int start, int end) {
+        this.document = document;
+        this.start = start;
+        this.end = end;
+        this.version = document.getVersion();
+    }
+
+    /**
+     * @return The number of characters in the window.
+     */
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    /**
+     * Returns the character at the specified index within the window.
+     * @param index The index of the character, relative to the start of the window.
+     * @return The character at the index.
+     * @throws IndexOutOfBoundsException If the index is not within the window.
+     * @throws ConcurrentModificationException If the document has been modified since the window was created.
+     */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        checkVersion();
+        return document.charAt(start + index);
+    }
+
+    /**
+     * Returns a window over part of this window.
+     * @param start The start index, relative to the start of this window (inclusive).
+     * @param end The end index, relative to the start of this window (exclusive).
+     * @return The new window.
+     * @throws IndexOutOfBoundsException If the range is not within the window.
+     * @throws ConcurrentModificationException If the document has been modified since the window was created.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException(String.format("Range [%d, %d) out of bounds for length %d", start, end, length()));
+        }
+        checkVersion();
+        return new DocumentWindow(document, this.start + start, this.start + end);
+    }
+
+    /**
+     * @return A string containing a copy of the characters in the window.
+     * @throws ConcurrentModificationException If the document has been modified since the window was created.
+     */
+    @Override
+    public String toString() {
+        checkVersion();
+        return document.getText(start, end);
+    }
+
+    /**
+     * Checks that the document has not been modified since the window was created.
+     * @throws ConcurrentModificationException If the document has been modified.
+     */
+    private void checkVersion() {
+        if (document.getVersion() != version) {
+            throw new ConcurrentModificationException("Document modified after window was created.");
+        }
+    }
+}
@@ -1,10 +1,14 @@
 package texteditor.app.model;
 
+import java.util.List;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyEvent;
 
 /**
  * Data structure used to store key combinations and their mapped actions and strings.
+ * <p>
+ * A mapping may be triggered by a single key combination, or by a sequence of key combinations pressed one
+ * after another, such as {@code ctrl+x ctrl+s}.
  * 
  * @author Rohan Khayech
  */
@@ -16,7 +20,9 @@ public class KeyMapping {
         /** Insert the specified string. */
         INSERT, 
         /** Delete the specified string.  */
-        DELETE
+        DELETE,
+        /** Invoke the command with the specified name. */
+        COMMAND
     }
 
     /**
@@ -29,16 +35,16 @@ public class KeyMapping {
         CARET
     }
     
-    /** The key combination. */
-    private final KeyCodeCombination keyCombo;
+    /** The sequence of key combinations. */
+    private final List<KeyCodeCombination> keySequence;
 
     /** The action to take when the key combo is pressed. */
     private final KeymapAction action;
 
-    /** The string to insert/delete when the key combo is pressed. */
+    /** The string to insert/delete, or the name of the command to invoke, when the key combo is pressed. */
     private final String string;
 
-    /** The position to insert/delete the string when the key combo is pressed. */
+    /** The position to insert/delete the string when the key combo is pressed, or {@code null} for commands. */
     private final KeymapPosition pos;
 
     /**
@@ -46,22 +52,47 @@ public class KeyMapping {
      * 
      * @param keyCombo The key combination.
      * @param action   The action to take when the key combo is pressed.
-     * @param string   The string to insert/delete when the key combo is pressed.
+     * @param string   The string to insert/delete, or the name of the command to
+     *                 invoke, when the key combo is pressed.
      * @param pos      The position to insert/delete the string when the key combo
-     *                 is pressed.
+     *                 is pressed, or {@code null} for commands.
      */
     public KeyMapping(final KeyCodeCombination keyCombo, final KeymapAction action, final String string, final KeymapPosition pos) {
-        this.keyCombo = keyCombo;
+        this(List.of(keyCombo), action, string, pos);
+    }
+
+    /**
+     * Constructs a new KeyMapping object triggered by a sequence of key combinations.
+     * 
+     * @param keySequence The sequence of key combinations, which must not be empty.
+     * @param action      The action to take when the key sequence is pressed.
+     * @param string      The string to insert/delete, or the name of the command to
+     *                    invoke, when the key sequence is pressed.
+     * @param pos         The position to insert/delete the string when the key
+     *                    sequence is pressed, or {@code null} for commands.
+     */
+    public KeyMapping(final List<KeyCodeCombination> keySequence, final KeymapAction action, final String string, final KeymapPosition pos) {
+        if (keySequence.isEmpty()) {
+            throw new IllegalArgumentException("Key sequence must not be empty.");
+        }
+        this.keySequence = List.copyOf(keySequence);
         this.action = action;
         this.string = string;
         this.pos = pos;
     }
 
     /**
-     * @return The key combination.
+     * @return The last key combination of the sequence, which triggers the action.
      */
     public KeyCodeCombination getKeyCombo() {
-        return keyCombo;
+        return keySequence.get(keySequence.size() - 1);
+    }
+
+    /**
+     * @return The sequence of key combinations, in the order they are pressed.
+     */
+    public List<KeyCodeCombination> getKeySequence() {
+        return keySequence;
     }
 
     /**
@@ -72,25 +103,25 @@ public class KeyMapping {
     }
 
     /**
-     * @return The string to insert/delete when the key combo is pressed.
+     * @return The string to insert/delete, or the name of the command to invoke, when the key combo is pressed.
      */
     public String getString() {
         return string;
     }
 
     /**
-     * @return The position to insert/delete the string when the key combo is pressed.
+     * @return The position to insert/delete the string when the key combo is pressed, or {@code null} for commands.
      */
     public KeymapPosition getPosition() {
         return pos;
     }
 
     /**
-     * Checks if the pressed key combination matches this KeyMapping's key combination.
+     * Checks if the pressed key combination matches the last key combination of this KeyMapping's sequence.
      * @param keyEvent The keypress event.
      * @return {@code true} if the key combination matches, {@code false} otherwise.
      */
     public boolean matches(KeyEvent keyEvent) {
-        return keyCombo.match(keyEvent);
+        return getKeyCombo().match(keyEvent);
     }
 }
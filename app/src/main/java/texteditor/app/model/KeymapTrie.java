@@ -0,0 +1,187 @@
+package texteditor.app.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination.ModifierValue;
+import javafx.scene.input.KeyEvent;
+
+/**
+ * Prefix tree of key mappings, indexed by the key code and modifier keys of each key press in their sequences.
+ * <p>
+ * Each node of the tree is the state reached after pressing a sequence of keys, so advancing to the next
+ * state takes constant time regardless of the number of mappings, and a key press with no mappings does no
+ * further work. Mappings sharing a key sequence are kept in the order they were added. A mapping that leaves
+ * a modifier unspecified is indexed under both states of that modifier. The platform shortcut modifier is
+ * not indexed, so the mappings completed by a key press are still checked with
+ * {@link KeyMapping#matches(KeyEvent)} before being returned.
+ *
+ * @author Rohan Khayech
+ */
+public class KeymapTrie {
+
+    /** Modifier bit for the shift key. */
+    private static final int SHIFT = 1;
+    /** Modifier bit for the control key. */
+    private static final int CONTROL = 2;
+    /** Modifier bit for the alt key. */
+    private static final int ALT = 4;
+    /** Modifier bit for the meta key. */
+    private static final int META = 8;
+    /** The number of combinations of modifier bits. */
+    private static final int MODIFIER_COMBINATIONS = 16;
+
+    /** The result of looking up a key press with no mappings. */
+    private static final KeyMapping[] NONE = new KeyMapping[0];
+
+    /**
+     * The state reached after pressing a sequence of keys.
+     */
+    public static class Node {
+        /** The states reached by pressing each key combination next, or {@code null} if there are none. */
+        private Map<Integer, Node> next;
+        /** The mappings whose key sequence ends at this state. */
+        private KeyMapping[] mappings = NONE;
+
+        /**
+         * Returns the state reached by pressing the specified key from this state.
+         * @param keyEvent The key press event.
+         * @return The next state, or {@code null} if no mapping continues with the key press.
+         */
+        public Node next(KeyEvent keyEvent) {
+            if (next == null || keyEvent.getCode() == null) {
+                return null;
+            }
+            return next.get(index(keyEvent));
+        }
+
+        /**
+         * @return {@code true} if the key sequence of any mapping continues past this state, {@code false} otherwise.
+         */
+        public boolean isPrefix() {
+            return next != null;
+        }
+
+        /**
+         * Returns the mappings whose key sequence is completed by the specified key press at this state.
+         * @param keyEvent The key press event that reached this state.
+         * @return The matching mappings in order, or an empty array if there are none.
+         */
+        public KeyMapping[] getMappings(KeyEvent keyEvent) {
+            if (mappings.length == 0) {
+                return NONE;
+            }
+
+            // Check the modifiers that are not indexed.
+            KeyMapping[] matches = new KeyMapping[mappings.length];
+            int count = 0;
+            for (KeyMapping candidate : mappings) {
+                if (candidate.matches(keyEvent)) {
+                    matches[count++] = candidate;
+                }
+            }
+            return count == matches.length ? matches : Arrays.copyOf(matches, count);
+        }
+
+        /**
+         * Returns the state reached by pressing the specified key combination from this state, adding it if needed.
+         * @param index The index of the key combination.
+         * @return The next state.
+         */
+        private Node child(int index) {
+            if (next == null) {
+                next = new HashMap<>();
+            }
+            return next.computeIfAbsent(index, key -> new Node());
+        }
+
+        /**
+         * Appends a mapping ending at this state.
+         * @param keymap The mapping to append.
+         */
+        private void add(KeyMapping keymap) {
+            mappings = Arrays.copyOf(mappings, mappings.length + 1);
+            mappings[mappings.length - 1] = keymap;
+        }
+    }
+
+    /** The state before any key of a sequence has been pressed. */
+    private final Node root = new Node();
+    /** The mappings in the tree, in order of precedence. */
+    private final List<KeyMapping> mappings;
+
+    /**
+     * Constructs a new tree of the specified key mappings.
+     * @param keymaps The key mappings, in order of precedence.
+     */
+    public KeymapTrie(List<KeyMapping> keymaps) {
+        for (KeyMapping keymap : keymaps) {
+            // Follow every combination of modifiers the key sequence accepts.
+            List<Node> nodes = List.of(root);
+            for (KeyCodeCombination combo : keymap.getKeySequence()) {
+                List<Node> next = new ArrayList<>();
+                int base = combo.getCode().ordinal() * MODIFIER_COMBINATIONS;
+                for (int modifiers = 0; modifiers < MODIFIER_COMBINATIONS; modifiers++) {
+                    if (accepts(combo.getShift(), modifiers, SHIFT) && accepts(combo.getControl(), modifiers, CONTROL)
+                            && accepts(combo.getAlt(), modifiers, ALT) && accepts(combo.getMeta(), modifiers, META)) {
+                        for (Node node : nodes) {
+                            next.add(node.child(base + modifiers));
+                        }
+                    }
+                }
+                nodes = next;
+            }
+            for (Node node : nodes) {
+                node.add(keymap);
+            }
+        }
+        this.mappings = List.copyOf(keymaps);
+    }
+
+    /**
+     * @return The number of mappings in the tree.
+     */
+    public int size() {
+        return mappings.size();
+    }
+
+    /**
+     * @return The mappings in the tree, in order of precedence.
+     */
+    public List<KeyMapping> getMappings() {
+        return mappings;
+    }
+
+    /**
+     * @return The state before any key of a sequence has been pressed.
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the index of the key code and modifiers of the specified key press.
+     * @param keyEvent The key press event.
+     * @return The index of the key combination.
+     */
+    private static int index(KeyEvent keyEvent) {
+        int modifiers = (keyEvent.isShiftDown() ? SHIFT : 0) | (keyEvent.isControlDown() ? CONTROL : 0)
+                | (keyEvent.isAltDown() ? ALT : 0) | (keyEvent.isMetaDown() ? META : 0);
+        return keyEvent.getCode().ordinal() * MODIFIER_COMBINATIONS + modifiers;
+    }
+
+    /**
+     * Checks whether a modifier value accepts the state of its key in the specified combination of modifiers.
+     * @param value The modifier value of the key combination.
+     * @param modifiers The combination of modifier bits.
+     * @param bit The bit of the modifier.
+     * @return {@code true} if the modifier state is accepted, {@code false} otherwise.
+     */
+    private static boolean accepts(ModifierValue value, int modifiers, int bit) {
+        boolean down = (modifiers & bit) != 0;
+        return value == ModifierValue.ANY || (value == ModifierValue.DOWN) == down;
+    }
+}
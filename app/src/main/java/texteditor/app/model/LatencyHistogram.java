@@ -0,0 +1,111 @@
+package texteditor.app.model;
+
+/**
+ * Records the distribution of the durations of a repeated operation, such as calls to a plugin's callbacks.
+ * <p>
+ * Durations are counted in buckets growing exponentially in size, with 8 buckets for each power of two,
+ * so percentiles are accurate to within about 12% while using a small, fixed amount of memory.
+ * Durations may be recorded and read from any thread.
+ *
+ * @author Rohan Khayech
+ */
+public class LatencyHistogram {
+
+    /** The number of bits used to divide each power of two into buckets. */
+    private static final int SUB_BUCKET_BITS = 3;
+    /** The number of buckets for each power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** The total number of buckets, enough to hold any non-negative long. */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** The number of durations recorded in each bucket. */
+    private final long[] counts = new long[BUCKETS];
+    /** The total number of durations recorded. */
+    private long count = 0;
+    /** The longest duration recorded (in nanoseconds). */
+    private long max = 0;
+    /** The number of durations recorded that were longer than the budget. */
+    private long overBudget = 0;
+
+    /**
+     * Records a duration.
+     * @param nanos The duration (in nanoseconds).
+     * @param budget The longest the operation should take (in nanoseconds).
+     */
+    public synchronized void record(long nanos, long budget) {
+        nanos = Math.max(nanos, 0);
+        counts[bucketOf(nanos)]++;
+        count++;
+        max = Math.max(max, nanos);
+        if (nanos > budget) {
+            overBudget++;
+        }
+    }
+
+    /**
+     * @return The number of durations recorded.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The longest duration recorded (in nanoseconds), or 0 if none have been recorded.
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * @return The number of durations recorded that were longer than the budget.
+     */
+    public synchronized long getOverBudget() {
+        return overBudget;
+    }
+
+    /**
+     * Returns the duration that the specified fraction of recorded durations did not exceed.
+     * @param fraction The fraction of durations, between 0 and 1 (eg. 0.99 for the 99th percentile).
+     * @return The duration (in nanoseconds), or 0 if none have been recorded.
+     */
+    public synchronized long getPercentile(double fraction) {
+        long rank = Math.max((long) Math.ceil(fraction * count), 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Report the top of the bucket, but never more than the longest duration recorded.
+                return Math.min(i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE, max);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the bucket counting the specified duration.
+     * @param nanos The duration (in nanoseconds).
+     * @return The index of the bucket.
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the shortest duration counted by the specified bucket.
+     * @param bucket The index of the bucket.
+     * @return The duration (in nanoseconds).
+     */
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,186 @@
+package texteditor.app.model;
+
+/**
+ * Index of the offsets at which each line of a document starts.
+ * <p>
+ * Line starts are stored in a gap array. Entries before the gap hold the absolute offset of the line
+ * start, while entries after the gap hold the distance from the line start to the end of the document,
+ * so an edit never has to shift the lines that follow it. Edits move the gap to the edited line and
+ * add or remove entries there, and lookups binary search the two sorted halves in O(log n).
+ * <p>
+ * A snapshot of the index shares its array, which the index copies before its next update, so taking
+ * a snapshot costs O(1) and the snapshot is never modified.
+ *
+ * @author Rohan Khayech
+ */
+public class LineIndex {
+
+    /** Initial capacity of the line start array. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** Gap array of line start offsets. */
+    private int[] starts;
+    /** Index of the first entry in the gap. */
+    private int gapStart;
+    /** Index of the first entry after the gap. */
+    private int gapEnd;
+    /** The number of characters in the indexed text. */
+    private int length;
+    /** Whether the array is shared with a snapshot, so must be copied before it is modified. */
+    private boolean shared = false;
+
+    /**
+     * Constructs a new line index for the specified text.
+     * @param text The text to index.
+     */
+    public LineIndex(CharSequence text) {
+        length = text.length();
+        starts = new int[MIN_CAPACITY];
+        gapStart = 0;
+        gapEnd = starts.length;
+
+        insertStart(0);
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                insertStart(i+1);
+            }
+        }
+    }
+
+    /**
+     * Constructs a snapshot of an index, sharing its array.
+     * @param starts The gap array of line start offsets.
+     * @param gapStart The index of the first entry in the gap.
+     * @param gapEnd The index of the first entry after the gap.
+     * @param length The number of characters in the indexed text.
+     */
+    private LineIndex(int[] starts, int gapStart, int gapEnd, int length) {
+        this.starts = starts;
+        this.gapStart = gapStart;
+        this.gapEnd = gapEnd;
+        this.length = length;
+        this.shared = true;
+    }
+
+    /**
+     * Returns an immutable snapshot of the index, which shares its array until the index is next updated.
+     * @return A copy of the index that must not be updated.
+     */
+    public LineIndex snapshot() {
+        shared = true;
+        return new LineIndex(starts, gapStart, gapEnd, length);
+    }
+
+    /**
+     * @return The number of lines in the indexed text.
+     */
+    public int getLineCount() {
+        return starts.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * Returns the offset of the start of the specified line.
+     * @param line The zero-based index of the line.
+     * @return The offset of the first character of the line.
+     * @throws IndexOutOfBoundsException If the line does not exist.
+     */
+    public int getLineStart(int line) {
+        if (line < 0 || line >= getLineCount()) {
+            throw new IndexOutOfBoundsException(line);
+        }
+        if (line < gapStart) {
+            return starts[line];
+        } else {
+            return length - starts[line + gapEnd - gapStart];
+        }
+    }
+
+    /**
+     * Returns the line containing the specified offset.
+     * @param offset An offset within the indexed text, between 0 and the text length inclusive.
+     * @return The zero-based index of the line containing the offset.
+     * @throws IndexOutOfBoundsException If the offset is not within the text.
+     */
+    public int getLineOfOffset(int offset) {
+        if (offset < 0 || offset > length) {
+            throw new IndexOutOfBoundsException(offset);
+        }
+        // Find the last line starting at or before the offset.
+        int low = 0;
+        int high = getLineCount()-1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (getLineStart(mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid-1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Updates the index after a range of the text has been replaced.
+     * @param offset The offset where the change occurred.
+     * @param removedLength The number of characters removed at the offset.
+     * @param insertedText The text inserted at the offset.
+     */
+    public void update(int offset, int removedLength, CharSequence insertedText) {
+        if (shared) {
+            starts = starts.clone();
+            shared = false;
+        }
+
+        // Lines up to and including the edited line are unaffected.
+        moveGap(getLineOfOffset(offset)+1);
+
+        // Remove lines whose preceding line break was within the removed range.
+        int removedEnd = offset + removedLength;
+        while (gapEnd < starts.length && length - starts[gapEnd] <= removedEnd) {
+            gapEnd++;
+        }
+
+        // Lines after the gap are stored relative to the end, so are shifted by updating the length.
+        length += insertedText.length() - removedLength;
+
+        // Add lines for each line break in the inserted text.
+        for (int i = 0; i < insertedText.length(); i++) {
+            if (insertedText.charAt(i) == '\n') {
+                insertStart(offset+i+1);
+            }
+        }
+    }
+
+    /**
+     * Moves the gap so that it starts at the specified line.
+     * @param line The line to move the gap to.
+     */
+    private void moveGap(int line) {
+        while (gapStart > line) {
+            gapStart--;
+            gapEnd--;
+            starts[gapEnd] = length - starts[gapStart];
+        }
+        while (gapStart < line) {
+            starts[gapStart] = length - starts[gapEnd];
+            gapStart++;
+            gapEnd++;
+        }
+    }
+
+    /**
+     * Inserts a line start at the start of the gap, growing the array if required.
+     * @param offset The absolute offset of the line start.
+     */
+    private void insertStart(int offset) {
+        if (gapStart == gapEnd) {
+            int[] grown = new int[starts.length * 2];
+            int after = starts.length - gapEnd;
+            System.arraycopy(starts, 0, grown, 0, gapStart);
+            System.arraycopy(starts, gapEnd, grown, grown.length - after, after);
+            gapEnd = grown.length - after;
+            starts = grown;
+        }
+        starts[gapStart++] = offset;
+    }
+}
@@ -0,0 +1,458 @@
+package texteditor.app.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Map;
+
+/**
+ * Read-only character sequence backed by a memory-mapped file.
+ * <p>
+ * The file is mapped into memory in regions and divided into chunks of decoded characters. When the
+ * text is opened, the file is decoded once to record the byte and character offset of each chunk.
+ * Characters are then decoded a chunk at a time when accessed, with a small cache of recently used
+ * chunks, so the heap used is roughly constant regardless of the size of the file.
+ * <p>
+ * Used as the original buffer of a {@link Document}, edits are stored in the document's add buffer.
+ * When the file is saved incrementally, the chunks about to be overwritten are first detached from
+ * the file by decoding them onto the heap, so the text is never affected by writes to the file.
+ *
+ * @author Rohan Khayech
+ */
+public class MappedText implements CharSequence {
+
+    /** The number of bytes between the start of each mapped region. */
+    private static final long REGION_SIZE = 1L << 30;
+    /** The number of bytes each region overlaps the next, so that no chunk spans two regions. */
+    private static final int REGION_OVERLAP = 1 << 20;
+    /** The maximum number of characters in a chunk. */
+    private static final int CHUNK_SIZE = 1 << 14;
+    /** The number of decoded chunks to keep cached. */
+    private static final int CACHE_SIZE = 64;
+
+    /**
+     * A decoded chunk of characters.
+     */
+    private static class Chunk {
+        /** The character offset of the start of the chunk. */
+        private final int start;
+        /** The decoded characters. */
+        private final char[] chars;
+
+        /**
+         * Constructs a new decoded chunk.
+         * @param start The character offset of the start of the chunk.
+         * @param chars The decoded characters.
+         */
+        private Chunk(int start, char[] chars) {
+            this.start = start;
+            this.chars = chars;
+        }
+    }
+
+    /** The mapped file. */
+    private final Path path;
+    /** The encoding of the file. */
+    private final Charset charset;
+    /** The attributes of the file when it was mapped or last written to. */
+    private BasicFileAttributes attributes;
+    /** The mapped regions of the file. */
+    private final MappedByteBuffer[] regions;
+    /** Decoder for the first chunk, which may contain a byte order mark. */
+    private final CharsetDecoder firstDecoder;
+    /** Decoder for all following chunks. */
+    private final CharsetDecoder decoder;
+    /** The byte offset of the start of each chunk, followed by the size of the file. */
+    private long[] byteStarts;
+    /** The character offset of the start of each chunk, followed by the length of the text. */
+    private int[] charStarts;
+    /** The number of chunks. */
+    private int chunks;
+    /** The number of characters in the text. */
+    private final int length;
+
+    /** Cache of recently decoded chunks, in access order. */
+    private final Map<Integer, Chunk> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Chunk> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    /** The most recently accessed chunk. */
+    private volatile Chunk last;
+    /** Chunks that have been overwritten in the file, and so are kept on the heap. */
+    private final Map<Integer, Chunk> detached = new HashMap<>();
+    /** The character offset of the start of the first overwritten chunk. */
+    private int dirtyStart;
+    /** The character offset of the end of the last overwritten chunk. */
+    private int dirtyEnd = 0;
+
+    /**
+     * Maps the specified file and indexes its contents.
+     * @param path The file to map.
+     * @param charset The encoding of the file.
+     * @throws IOException If there is an issue reading the file, or the text is too long to be edited.
+     */
+    public MappedText(Path path, Charset charset) throws IOException {
+        this.path = path;
+        this.charset = charset;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = channel.size();
+            regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE + REGION_OVERLAP, size - start));
+            }
+
+            firstDecoder = newDecoder(charset);
+            decoder = newDecoder(resolveByteOrder(charset));
+            length = index(size);
+            dirtyStart = length;
+        }
+    }
+
+    /**
+     * @return The number of characters in the text.
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the character at the specified index, decoding its chunk if it is not cached.
+     * @param index The index of the character.
+     * @return The character at the index.
+     * @throws IndexOutOfBoundsException If the index is not within the text.
+     */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        Chunk chunk = last;
+        if (chunk == null || index < chunk.start || index >= chunk.start + chunk.chars.length) {
+            chunk = getChunk(findChunk(index));
+            last = chunk;
+        }
+        return chunk.chars[index - chunk.start];
+    }
+
+    /**
+     * Returns a copy of the characters between the specified indexes.
+     * @param start The start index (inclusive).
+     * @param end The end index (exclusive).
+     * @return A string containing the characters in the range.
+     * @throws IndexOutOfBoundsException If the range is not within the text.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(String.format("Range [%d, %d) out of bounds for length %d", start, end, length));
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        int pos = start;
+        while (pos < end) {
+            Chunk chunk = getChunk(findChunk(pos));
+            int to = Math.min(end, chunk.start + chunk.chars.length);
+            sb.append(chunk.chars, pos - chunk.start, to - pos);
+            pos = to;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return A string containing a copy of the full text.
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    /**
+     * Checks whether the specified file is the mapped file, in the same encoding, and has not been
+     * modified since it was mapped or last written to through {@link #detach(int, int)}.
+     * @param file The file to check.
+     * @param charset The encoding of the file.
+     * @return {@code true} if the file can be written to incrementally, {@code false} otherwise.
+     */
+    public synchronized boolean isMappedFrom(Path file, Charset charset) {
+        try {
+            if (!this.charset.equals(charset) || !Files.isSameFile(path, file)) {
+                return false;
+            }
+            BasicFileAttributes current = Files.readAttributes(path, BasicFileAttributes.class);
+            return Objects.equals(current.fileKey(), attributes.fileKey())
+                && current.size() == attributes.size()
+                && current.lastModifiedTime().equals(attributes.lastModifiedTime());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the start of the chunk containing the specified offset, so that text can be
+     * re-encoded from a known byte offset.
+     * @param index An offset within the text, between 0 and the text length inclusive.
+     * @return The character offset of the start of the chunk.
+     */
+    public int getChunkStart(int index) {
+        return index == length ? length : charStarts[findChunk(index)];
+    }
+
+    /**
+     * Returns the end of the chunk containing the character before the specified offset.
+     * @param index An offset within the text, between 0 and the text length inclusive.
+     * @return The character offset of the end of the chunk, or 0 if the offset is 0.
+     */
+    public int getChunkEnd(int index) {
+        return index == 0 ? 0 : charStarts[findChunk(index - 1) + 1];
+    }
+
+    /**
+     * Returns the byte offset in the file of the specified chunk boundary. Only boundaries outside
+     * of the range overwritten through {@link #detach(int, int)} are still valid.
+     * @param index The character offset of the start or end of a chunk.
+     * @return The byte offset of the boundary.
+     * @throws IllegalArgumentException If the offset is not a chunk boundary.
+     */
+    public long getByteOffset(int index) {
+        int chunk = index == length ? chunks : findChunk(index);
+        if (charStarts[chunk] != index) {
+            throw new IllegalArgumentException("Offset " + index + " is not a chunk boundary.");
+        }
+        return byteStarts[chunk];
+    }
+
+    /**
+     * Returns the charset used to encode text starting at the specified chunk boundary.
+     * @param index The character offset of the start of a chunk.
+     * @return The charset, or {@code null} if the text cannot be encoded separately from the byte order mark
+     *         at the start of the file.
+     */
+    public Charset getCharset(int index) {
+        if (index == 0 && !firstDecoder.charset().equals(decoder.charset())) {
+            return null;
+        }
+        return decoder.charset();
+    }
+
+    /**
+     * @return The character offset of the start of the first chunk overwritten in the file,
+     *         or the length of the text if none have been.
+     */
+    public synchronized int getDirtyStart() {
+        return dirtyStart;
+    }
+
+    /**
+     * @return The character offset of the end of the last chunk overwritten in the file,
+     *         or 0 if none have been.
+     */
+    public synchronized int getDirtyEnd() {
+        return dirtyEnd;
+    }
+
+    /**
+     * Decodes the chunks between the specified boundaries onto the heap so they are no longer read from the
+     * file, before the file is overwritten. Chunks that were already detached keep their original text.
+     * @param start The character offset of the start of the first chunk.
+     * @param end The character offset of the end of the last chunk.
+     */
+    public synchronized void detach(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        for (int i = findChunk(start); i < chunks && charStarts[i] < end; i++) {
+            if (!detached.containsKey(i)) {
+                detached.put(i, getChunk(i));
+            }
+        }
+        dirtyStart = Math.min(dirtyStart, start);
+        dirtyEnd = Math.max(dirtyEnd, end);
+    }
+
+    /**
+     * Records the attributes of the file after it has been written to, so that later writes can
+     * detect whether the file has been modified by another program.
+     * @throws IOException If there is an issue reading the file's attributes.
+     */
+    public synchronized void updateAttributes() throws IOException {
+        attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    }
+
+    /**
+     * Decodes the file once, recording the byte and character offsets of each chunk.
+     * @param size The size of the file in bytes.
+     * @return The number of characters in the text.
+     * @throws IOException If the text is too long to be edited.
+     */
+    private int index(long size) throws IOException {
+        byteStarts = new long[16];
+        charStarts = new int[16];
+        chunks = 0;
+
+        CharBuffer out = CharBuffer.allocate(CHUNK_SIZE);
+        long pos = 0;
+        long chars = 0;
+        while (pos < size) {
+            ByteBuffer in = getBytes(pos);
+            int inStart = in.position();
+            boolean endOfFile = pos + in.remaining() == size;
+            out.clear();
+            decode(chunks == 0 ? firstDecoder : decoder, in, out, endOfFile);
+            if (in.position() == inStart) {
+                throw new IOException("The file could not be decoded.");
+            }
+
+            addChunk(pos, (int) chars);
+            pos += in.position() - inStart;
+            chars += out.position();
+            if (chars > Integer.MAX_VALUE) {
+                throw new IOException("The file contains too many characters to be edited.");
+            }
+        }
+        byteStarts[chunks] = pos;
+        charStarts[chunks] = (int) chars;
+        return (int) chars;
+    }
+
+    /**
+     * Decodes a chunk's worth of characters, stopping when the output is full or the input is exhausted.
+     * As regions overlap by more than the size of a chunk, the input is only exhausted at the end of the file
+     * or the end of a previously indexed chunk.
+     * @param chunkDecoder The decoder to use.
+     * @param in The bytes to decode.
+     * @param out The buffer to decode into.
+     * @param endOfInput {@code true} if the input ends at the end of the file or chunk.
+     */
+    private static void decode(CharsetDecoder chunkDecoder, ByteBuffer in, CharBuffer out, boolean endOfInput) {
+        chunkDecoder.reset();
+        CoderResult result = chunkDecoder.decode(in, out, endOfInput);
+        if (endOfInput && result.isUnderflow()) {
+            chunkDecoder.flush(out);
+        }
+    }
+
+    /**
+     * Records the start of a chunk.
+     * @param byteStart The byte offset of the start of the chunk.
+     * @param charStart The character offset of the start of the chunk.
+     */
+    private void addChunk(long byteStart, int charStart) {
+        if (chunks + 1 >= byteStarts.length) {
+            byteStarts = Arrays.copyOf(byteStarts, byteStarts.length * 2);
+            charStarts = Arrays.copyOf(charStarts, charStarts.length * 2);
+        }
+        byteStarts[chunks] = byteStart;
+        charStarts[chunks] = charStart;
+        chunks++;
+    }
+
+    /**
+     * Finds the chunk containing the specified character.
+     * @param index The index of the character.
+     * @return The index of the chunk.
+     */
+    private int findChunk(int index) {
+        // Find the first chunk ending after the index.
+        int low = 0;
+        int high = chunks - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (charStarts[mid + 1] > index) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the decoded characters of a chunk, decoding it if it is not cached.
+     * @param index The index of the chunk.
+     * @return The decoded chunk.
+     */
+    private synchronized Chunk getChunk(int index) {
+        Chunk chunk = detached.get(index);
+        if (chunk == null) {
+            chunk = cache.get(index);
+        }
+        if (chunk == null) {
+            ByteBuffer in = getBytes(byteStarts[index]);
+            in.limit(in.position() + (int) (byteStarts[index + 1] - byteStarts[index]));
+            CharBuffer out = CharBuffer.allocate(charStarts[index + 1] - charStarts[index]);
+            decode(index == 0 ? firstDecoder : decoder, in, out, true);
+
+            chunk = new Chunk(charStarts[index], out.array());
+            cache.put(index, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns a view of the mapped bytes from the specified offset to the end of its region.
+     * @param pos The byte offset within the file.
+     * @return A buffer positioned at the offset.
+     */
+    private ByteBuffer getBytes(long pos) {
+        int region = (int) (pos / REGION_SIZE);
+        ByteBuffer bytes = regions[region].duplicate();
+        bytes.position((int) (pos - region * REGION_SIZE));
+        return bytes;
+    }
+
+    /**
+     * Creates a decoder that replaces invalid input, matching the behaviour of {@link String#String(byte[], Charset)}.
+     * @param charset The charset to decode.
+     * @return The decoder.
+     */
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Resolves the charset used after the start of the file for encodings that detect their byte
+     * order from a byte order mark, as decoding from the middle of the file skips the mark.
+     * @param charset The charset of the file.
+     * @return The charset to use after the first chunk.
+     */
+    private Charset resolveByteOrder(Charset charset) {
+        if (regions.length == 0) {
+            return charset;
+        }
+        ByteBuffer bytes = regions[0].duplicate();
+        switch (charset.name()) {
+            case "UTF-16":
+                if (bytes.remaining() >= 2 && bytes.get(0) == (byte) 0xFF && bytes.get(1) == (byte) 0xFE) {
+                    return Charset.forName("UTF-16LE");
+                }
+                return Charset.forName("UTF-16BE");
+            case "UTF-32":
+                if (bytes.remaining() >= 4 && bytes.get(0) == (byte) 0xFF && bytes.get(1) == (byte) 0xFE && bytes.get(2) == 0 && bytes.get(3) == 0) {
+                    return Charset.forName("UTF-32LE");
+                }
+                return Charset.forName("UTF-32BE");
+            default:
+                return charset;
+        }
+    }
+}
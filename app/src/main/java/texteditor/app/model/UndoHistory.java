@@ -0,0 +1,364 @@
+package texteditor.app.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo and redo history of a {@link Document}.
+ * <p>
+ * Each change to the document is recorded as a compact delta of the offset, removed text and inserted
+ * text, rather than a copy of the document. Consecutive keystrokes are merged into a single entry, up to
+ * {@value #MAX_MERGED_LENGTH} characters, and changes made between {@link #beginCompound()} and
+ * {@link #endCompound()} are undone as a single step.
+ * The memory used by the recorded text is capped, with the oldest entries evicted when the cap is
+ * exceeded, so the history remains usable when editing large files.
+ *
+ * @author Rohan Khayech
+ */
+public class UndoHistory implements DocumentListener {
+
+    /** The default maximum number of bytes used by the recorded text. */
+    public static final long DEFAULT_MEMORY_LIMIT = 32L * 1024 * 1024;
+    /** The estimated number of bytes used by each recorded change, in addition to its text. */
+    private static final long EDIT_OVERHEAD = 64;
+    /**
+     * The most characters typed or deleted by a run of keystrokes merged into a single entry. Longer runs
+     * are split into several entries, as each merge copies the text of the run so far.
+     */
+    private static final int MAX_MERGED_LENGTH = 256;
+
+    /**
+     * A single recorded change to the document.
+     */
+    private static class Edit {
+        /** The position in the document where the change occurred. */
+        private final int offset;
+        /** The text that was removed. */
+        private final String removed;
+        /** The text that was inserted. */
+        private final String inserted;
+
+        /**
+         * Constructs a new recorded change.
+         * @param offset The position in the document where the change occurred.
+         * @param removed The text that was removed.
+         * @param inserted The text that was inserted.
+         */
+        private Edit(int offset, String removed, String inserted) {
+            this.offset = offset;
+            this.removed = removed;
+            this.inserted = inserted;
+        }
+
+        /**
+         * @return The estimated number of bytes used by the change.
+         */
+        private long size() {
+            return EDIT_OVERHEAD + 2L * (removed.length() + inserted.length());
+        }
+    }
+
+    /**
+     * A group of changes that are undone and redone as a single step.
+     */
+    private static class Entry {
+        /** The changes in the order they were made. */
+        private final List<Edit> edits = new ArrayList<>(1);
+        /** Whether following keystrokes can be merged into the entry. */
+        private boolean open;
+        /** The estimated number of bytes used by the entry. */
+        private long size = 0;
+    }
+
+    /** The document to record changes to. */
+    private final Document document;
+    /** Entries that can be undone, with the most recent last. */
+    private final Deque<Entry> undoStack = new ArrayDeque<>();
+    /** Entries that can be redone, with the most recently undone first. */
+    private final Deque<Entry> redoStack = new ArrayDeque<>();
+    /** The maximum number of bytes used by the recorded text. */
+    private long memoryLimit;
+    /** The estimated number of bytes used by the entries in both stacks. */
+    private long memoryUsed = 0;
+    /** The entry recording changes made within a compound edit, or {@code null} if none have been made yet. */
+    private Entry compound;
+    /** The number of nested compound edits in progress. */
+    private int compoundDepth = 0;
+    /** Whether changes to the document are recorded. */
+    private boolean recording = true;
+    /** Whether the history is currently applying an entry to the document. */
+    private boolean applying = false;
+
+    /**
+     * Constructs a new history recording changes to the specified document, using the default memory limit.
+     * @param document The document to record changes to.
+     */
+    public UndoHistory(Document document) {
+        this(document, DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * Constructs a new history recording changes to the specified document.
+     * @param document The document to record changes to.
+     * @param memoryLimit The maximum number of bytes used by the recorded text.
+     */
+    public UndoHistory(Document document, long memoryLimit) {
+        this.document = document;
+        this.memoryLimit = memoryLimit;
+        document.addListener(this);
+    }
+
+    /**
+     * @return The maximum number of bytes used by the recorded text.
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Sets the maximum number of bytes used by the recorded text, evicting the oldest entries if it is exceeded.
+     * @param memoryLimit The maximum number of bytes.
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+        evict();
+    }
+
+    /**
+     * @return The estimated number of bytes used by the recorded text.
+     */
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Sets whether changes to the document are recorded, eg. to ignore changes made while loading a file.
+     * @param recording {@code true} to record changes, {@code false} to ignore them.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * @return {@code true} if there is a change that can be undone, {@code false} otherwise.
+     */
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    /**
+     * @return {@code true} if there is a change that can be redone, {@code false} otherwise.
+     */
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /**
+     * Discards all recorded changes.
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        memoryUsed = 0;
+        compound = null;
+    }
+
+    /**
+     * Stops following keystrokes from being merged into the most recent entry.
+     */
+    public void closeEntry() {
+        if (!undoStack.isEmpty()) {
+            undoStack.peekLast().open = false;
+        }
+    }
+
+    /**
+     * Starts a compound edit, so that all changes made until the matching call to {@link #endCompound()}
+     * are undone as a single step. Compound edits can be nested.
+     */
+    public void beginCompound() {
+        if (compoundDepth == 0) {
+            closeEntry();
+            compound = null;
+        }
+        compoundDepth++;
+    }
+
+    /**
+     * Ends a compound edit started by {@link #beginCompound()}.
+     * @throws IllegalStateException If there is no compound edit in progress.
+     */
+    public void endCompound() {
+        if (compoundDepth == 0) {
+            throw new IllegalStateException("No compound edit in progress.");
+        }
+        compoundDepth--;
+        if (compoundDepth == 0) {
+            closeEntry();
+            compound = null;
+        }
+    }
+
+    /**
+     * Reverts the most recent entry.
+     * @return The position after the restored text, where the caret should be placed, or -1 if there was nothing to undo.
+     */
+    public int undo() {
+        Entry entry = undoStack.pollLast();
+        if (entry == null) {
+            return -1;
+        }
+        entry.open = false;
+        int caret = -1;
+        applying = true;
+        try {
+            for (int i = entry.edits.size() - 1; i >= 0; i--) {
+                Edit edit = entry.edits.get(i);
+                document.replace(edit.offset, edit.offset + edit.inserted.length(), edit.removed);
+                caret = edit.offset + edit.removed.length();
+            }
+        } finally {
+            applying = false;
+        }
+        redoStack.push(entry);
+        return caret;
+    }
+
+    /**
+     * Reapplies the most recently undone entry.
+     * @return The position after the reinserted text, where the caret should be placed, or -1 if there was nothing to redo.
+     */
+    public int redo() {
+        Entry entry = redoStack.poll();
+        if (entry == null) {
+            return -1;
+        }
+        int caret = -1;
+        applying = true;
+        try {
+            for (Edit edit : entry.edits) {
+                document.replace(edit.offset, edit.offset + edit.removed.length(), edit.inserted);
+                caret = edit.offset + edit.inserted.length();
+            }
+        } finally {
+            applying = false;
+        }
+        undoStack.addLast(entry);
+        return caret;
+    }
+
+    /**
+     * Records a change to the document, merging it into the most recent entry if it continues
+     * a run of keystrokes or is part of a compound edit.
+     * @param offset The position in the document where the change occurred.
+     * @param removedText The text that was removed.
+     * @param insertedText The text that was inserted.
+     */
+    @Override
+    public void onDocumentChanged(int offset, CharSequence removedText, CharSequence insertedText) {
+        if (!recording || applying) {
+            return;
+        }
+
+        // Any redo history is invalidated by a new change.
+        for (Entry entry : redoStack) {
+            memoryUsed -= entry.size;
+        }
+        redoStack.clear();
+
+        // Discard the history rather than copying a change that could never fit within the limit.
+        if (EDIT_OVERHEAD + 2L * (removedText.length() + insertedText.length()) > memoryLimit) {
+            clear();
+            return;
+        }
+        String removed = removedText.toString();
+        String inserted = insertedText.toString();
+
+        Edit edit = new Edit(offset, removed, inserted);
+        Entry entry = undoStack.peekLast();
+        if (compoundDepth > 0 && compound != null) {
+            compound.edits.add(edit);
+            compound.size += edit.size();
+            memoryUsed += edit.size();
+        } else if (compoundDepth == 0 && entry != null && entry.open && isKeystroke(removed, inserted) && merge(entry, edit)) {
+            memoryUsed -= entry.size;
+            entry.size = entry.edits.get(0).size();
+            memoryUsed += entry.size;
+        } else {
+            entry = new Entry();
+            entry.edits.add(edit);
+            entry.open = compoundDepth == 0 && isKeystroke(removed, inserted);
+            entry.size = edit.size();
+            memoryUsed += entry.size;
+            undoStack.addLast(entry);
+            if (compoundDepth > 0) {
+                compound = entry;
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Merges a keystroke into the single change recorded by an entry, if it continues from that change
+     * and the merged change is no longer than {@value #MAX_MERGED_LENGTH} characters.
+     * @param entry The entry to merge into.
+     * @param edit The change made by the keystroke.
+     * @return {@code true} if the keystroke was merged, {@code false} otherwise.
+     */
+    private static boolean merge(Entry entry, Edit edit) {
+        if (entry.edits.size() != 1) {
+            return false;
+        }
+        Edit last = entry.edits.get(0);
+        if (last.removed.length() + last.inserted.length() + edit.removed.length() + edit.inserted.length() > MAX_MERGED_LENGTH) {
+            return false;
+        }
+        Edit merged = null;
+        if (edit.removed.isEmpty() && !edit.inserted.equals("\n") && edit.offset == last.offset + last.inserted.length()) {
+            // Typing after the previous change.
+            merged = new Edit(last.offset, last.removed, last.inserted + edit.inserted);
+        } else if (edit.inserted.isEmpty() && last.inserted.isEmpty() && edit.offset + edit.removed.length() == last.offset) {
+            // Backspacing before the previous deletion.
+            merged = new Edit(edit.offset, edit.removed + last.removed, "");
+        } else if (edit.inserted.isEmpty() && last.inserted.isEmpty() && edit.offset == last.offset) {
+            // Deleting forwards from the previous deletion.
+            merged = new Edit(edit.offset, last.removed + edit.removed, "");
+        }
+        if (merged != null) {
+            entry.edits.set(0, merged);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param removed The text removed by a change.
+     * @param inserted The text inserted by a change.
+     * @return {@code true} if the change could have been made by typing or deleting a single character
+     *         (or surrogate pair), {@code false} otherwise.
+     */
+    private static boolean isKeystroke(String removed, String inserted) {
+        if (inserted.isEmpty()) {
+            return removed.length() == 1 || removed.length() == 2;
+        }
+        return inserted.length() <= 2;
+    }
+
+    /**
+     * Evicts the oldest entries until the recorded text fits within the memory limit.
+     */
+    private void evict() {
+        while (memoryUsed > memoryLimit && !redoStack.isEmpty()) {
+            memoryUsed -= redoStack.pollLast().size;
+        }
+        while (memoryUsed > memoryLimit && !undoStack.isEmpty()) {
+            Entry entry = undoStack.pollFirst();
+            memoryUsed -= entry.size;
+            if (entry == compound) {
+                compound = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,852 @@
+package texteditor.app.view;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundFill;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import texteditor.app.model.Document;
+import texteditor.app.model.UndoHistory;
+
+/**
+ * Virtualized text editing control that displays and edits a {@link Document}.
+ * <p>
+ * Only the lines within the viewport, plus a small overscan, are laid out as text nodes. Their contents
+ * are pulled from the document each time the view is refreshed, so scrolling and editing cost
+ * O(visible lines) regardless of the size of the document. Text is displayed in a monospaced font so
+ * that positions within a line can be calculated from column numbers rather than by measuring text.
+ *
+ * @author Rohan Khayech
+ */
+public class EditorView extends Region {
+
+    /** The number of lines laid out above and below the viewport. */
+    private static final int OVERSCAN = 2;
+    /** The number of columns between tab stops. */
+    private static final int TAB_SIZE = 8;
+    /** Padding between the edge of the viewport and the text. */
+    private static final double PADDING = 4;
+    /** Colour used to highlight selected text. */
+    private static final Color SELECTION_COLOR = Color.rgb(0, 150, 201, 0.35);
+
+    /** The document being displayed. */
+    private final Document document;
+    /** The undo history of the document. */
+    private final UndoHistory history;
+    /** The monospaced font used to display the text. */
+    private final Font font = Font.font("Monospaced", Font.getDefault().getSize());
+    /** The width of a single column of text. */
+    private final double charWidth;
+    /** The height of a single line of text. */
+    private final double lineHeight;
+
+    /** Pane containing the nodes for the visible lines, caret and selection. */
+    private final Pane viewport = new Pane();
+    /** Scroll bar controlling the vertical scroll position, in pixels. */
+    private final ScrollBar vScrollBar = new ScrollBar();
+    /** Scroll bar controlling the horizontal scroll position, in pixels. */
+    private final ScrollBar hScrollBar = new ScrollBar();
+    /** Pool of text nodes used to display the visible lines. */
+    private final List<Text> lineNodes = new ArrayList<>();
+    /** Pool of rectangles used to highlight the selection on the visible lines. */
+    private final List<Rectangle> selectionNodes = new ArrayList<>();
+    /** Rectangle displaying the caret. */
+    private final Rectangle caretNode;
+    /** Reusable buffer for building the visible text of a line. */
+    private final StringBuilder lineBuffer = new StringBuilder();
+
+    /** The position of the caret within the document. */
+    private int caret = 0;
+    /** The position of the selection anchor within the document. */
+    private int anchor = 0;
+    /** The column the caret is kept at when moving between lines, or -1 if not moving vertically. */
+    private int targetColumn = -1;
+    /** The widest line seen so far, in columns, used to size the horizontal scroll bar. */
+    private int maxColumns = 0;
+    /** Whether the user can edit the text. */
+    private boolean editable = true;
+    /** Whether the view is currently being refreshed. */
+    private boolean refreshing = false;
+    /** The number of nested batch updates in progress, during which the view is not refreshed. */
+    private int updateDepth = 0;
+    /** Whether the caret was moved during a batch update, so should be scrolled to once it ends. */
+    private boolean scrollPending = false;
+
+    /**
+     * Constructs a new editor view displaying the specified document.
+     * @param document The document to display and edit.
+     * @param history The undo history of the document.
+     */
+    public EditorView(Document document, UndoHistory history) {
+        this.document = document;
+        this.history = history;
+
+        // Measure the font.
+        Text probe = new Text("0123456789");
+        probe.setFont(font);
+        charWidth = probe.getLayoutBounds().getWidth() / 10;
+        lineHeight = probe.getLayoutBounds().getHeight();
+
+        caretNode = new Rectangle(1, lineHeight);
+        caretNode.setManaged(false);
+
+        // Clip the text to the viewport.
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(viewport.widthProperty());
+        clip.heightProperty().bind(viewport.heightProperty());
+        viewport.setClip(clip);
+        viewport.getChildren().add(caretNode);
+
+        vScrollBar.setOrientation(Orientation.VERTICAL);
+        vScrollBar.valueProperty().addListener((object, oldValue, newValue) -> refresh());
+        hScrollBar.valueProperty().addListener((object, oldValue, newValue) -> refresh());
+
+        setBackground(new Background(new BackgroundFill(Color.WHITE, null, null)));
+        setFocusTraversable(true);
+        getChildren().addAll(viewport, vScrollBar, hScrollBar);
+
+        // Set up event handlers.
+        addEventHandler(KeyEvent.KEY_PRESSED, this::handleKeyPressed);
+        addEventHandler(KeyEvent.KEY_TYPED, this::handleKeyTyped);
+        viewport.addEventHandler(MouseEvent.MOUSE_PRESSED, this::handleMousePressed);
+        viewport.addEventHandler(MouseEvent.MOUSE_DRAGGED, this::handleMouseDragged);
+        addEventHandler(ScrollEvent.SCROLL, this::handleScroll);
+        focusedProperty().addListener((object, oldValue, newValue) -> refresh());
+
+        // Keep the caret and selection in place when the document changes.
+        document.addListener((offset, removedText, insertedText) -> {
+            caret = adjustPosition(caret, offset, removedText.length(), insertedText.length());
+            anchor = adjustPosition(anchor, offset, removedText.length(), insertedText.length());
+            refresh();
+        });
+    }
+
+    /**
+     * @return The position of the caret within the document (in characters).
+     */
+    public int getCaretPosition() {
+        return caret;
+    }
+
+    /**
+     * @return The position of the selection anchor within the document (in characters).
+     */
+    public int getAnchor() {
+        return anchor;
+    }
+
+    /**
+     * @return The currently selected text.
+     */
+    public String getSelectedText() {
+        return document.getText(Math.min(caret, anchor), Math.max(caret, anchor));
+    }
+
+    /**
+     * @return {@code true} if the user can edit the text, {@code false} if it is read-only.
+     */
+    public boolean isEditable() {
+        return editable;
+    }
+
+    /**
+     * Sets whether the user can edit the text. The caret can still be moved when the text is read-only.
+     * @param editable {@code true} if the user can edit the text, {@code false} if it is read-only.
+     */
+    public void setEditable(boolean editable) {
+        this.editable = editable;
+    }
+
+    /**
+     * Starts a batch update, during which changes to the document and caret are not displayed until
+     * the matching call to {@link #endUpdate()}. Batch updates can be nested.
+     */
+    public void beginUpdate() {
+        updateDepth++;
+    }
+
+    /**
+     * Ends a batch update started by {@link #beginUpdate()}, refreshing the view once for all changes made during it.
+     * @throws IllegalStateException If there is no batch update in progress.
+     */
+    public void endUpdate() {
+        if (updateDepth == 0) {
+            throw new IllegalStateException("No batch update in progress.");
+        }
+        updateDepth--;
+        if (updateDepth == 0) {
+            if (scrollPending) {
+                scrollPending = false;
+                scrollToCaret();
+            }
+            refresh();
+        }
+    }
+
+    /**
+     * Moves the caret to the specified position and clears the selection.
+     * @param pos The position to move the caret to.
+     */
+    public void positionCaret(int pos) {
+        selectRange(pos, pos);
+    }
+
+    /**
+     * Selects the text between the specified positions, placing the caret at the end position.
+     * Positions outside of the document are clamped to the document bounds.
+     * @param anchor The position to anchor the selection at.
+     * @param caret The position to move the caret to.
+     */
+    public void selectRange(int anchor, int caret) {
+        this.anchor = clamp(anchor, 0, document.length());
+        this.caret = clamp(caret, 0, document.length());
+        targetColumn = -1;
+        if (updateDepth > 0) {
+            scrollPending = true;
+        } else {
+            scrollToCaret();
+        }
+        refresh();
+    }
+
+    /**
+     * Replaces the selected text with the specified text, and moves the caret to the end of the inserted text.
+     * @param text The text to insert.
+     */
+    public void replaceSelection(String text) {
+        int start = Math.min(caret, anchor);
+        document.replace(start, Math.max(caret, anchor), text);
+        positionCaret(start + text.length());
+    }
+
+    /**
+     * Lays out the viewport and scroll bars, and refreshes the visible lines.
+     */
+    @Override
+    protected void layoutChildren() {
+        double vBarWidth = vScrollBar.prefWidth(-1);
+        double hBarHeight = hScrollBar.prefHeight(-1);
+        double width = Math.max(0, getWidth() - vBarWidth);
+        double height = Math.max(0, getHeight() - hBarHeight);
+
+        viewport.resizeRelocate(0, 0, width, height);
+        vScrollBar.resizeRelocate(width, 0, vBarWidth, height);
+        hScrollBar.resizeRelocate(0, height, width, hBarHeight);
+        refresh();
+    }
+
+    /**
+     * @return The preferred width of the view, fitting 80 columns of text.
+     */
+    @Override
+    protected double computePrefWidth(double height) {
+        return 80 * charWidth + 2 * PADDING + vScrollBar.prefWidth(-1);
+    }
+
+    /**
+     * @return The preferred height of the view, fitting 25 lines of text.
+     */
+    @Override
+    protected double computePrefHeight(double width) {
+        return 25 * lineHeight + 2 * PADDING + hScrollBar.prefHeight(-1);
+    }
+
+    /**
+     * Updates the scroll bar ranges and lays out the visible lines, selection and caret.
+     */
+    private void refresh() {
+        if (refreshing || updateDepth > 0) {
+            return;
+        }
+        refreshing = true;
+
+        double width = viewport.getWidth();
+        double height = viewport.getHeight();
+        updateScrollRanges();
+        double scrollX = hScrollBar.getValue();
+        double scrollY = vScrollBar.getValue();
+
+        // Find the range of lines and columns to lay out.
+        int lineCount = document.getLineCount();
+        int firstLine = Math.max(0, (int) ((scrollY - PADDING) / lineHeight) - OVERSCAN);
+        int lastLine = Math.min(lineCount, (int) Math.ceil((scrollY + height) / lineHeight) + OVERSCAN);
+        int firstColumn = Math.max(0, (int) ((scrollX - PADDING) / charWidth));
+        int lastColumn = firstColumn + (int) Math.ceil(width / charWidth) + 1;
+
+        int selStart = Math.min(caret, anchor);
+        int selEnd = Math.max(caret, anchor);
+
+        int visible = Math.max(0, lastLine - firstLine);
+        for (int i = 0; i < visible; i++) {
+            int line = firstLine + i;
+            int start = document.getLineStart(line);
+            int end = getLineEnd(line);
+            double y = PADDING + line * lineHeight - scrollY;
+
+            // Display the visible columns of the line.
+            Text lineNode = getLineNode(i);
+            lineNode.setText(buildVisibleText(start, end, firstColumn, lastColumn));
+            lineNode.setX(PADDING + firstColumn * charWidth - scrollX);
+            lineNode.setY(y);
+            lineNode.setVisible(true);
+
+            // Highlight the selected part of the line.
+            Rectangle selectionNode = getSelectionNode(i);
+            if (selStart < selEnd && selStart <= end && selEnd >= start) {
+                double x1 = PADDING + (selStart <= start ? 0 : getColumn(selStart)) * charWidth - scrollX;
+                double x2 = selEnd > end ? width : PADDING + getColumn(selEnd) * charWidth - scrollX;
+                selectionNode.setX(Math.max(0, x1));
+                selectionNode.setY(y);
+                selectionNode.setWidth(Math.max(0, x2 - Math.max(0, x1)));
+                selectionNode.setHeight(lineHeight);
+                selectionNode.setVisible(true);
+            } else {
+                selectionNode.setVisible(false);
+            }
+        }
+
+        // Hide unused nodes.
+        for (int i = visible; i < lineNodes.size(); i++) {
+            lineNodes.get(i).setVisible(false);
+            selectionNodes.get(i).setVisible(false);
+        }
+
+        // Display the caret if it is on a visible line.
+        int caretLine = document.getLineOfOffset(caret);
+        if (isFocused() && caretLine >= firstLine && caretLine < lastLine) {
+            caretNode.setX(PADDING + getColumn(caret) * charWidth - scrollX);
+            caretNode.setY(PADDING + caretLine * lineHeight - scrollY);
+            caretNode.setVisible(true);
+        } else {
+            caretNode.setVisible(false);
+        }
+
+        refreshing = false;
+    }
+
+    /**
+     * Updates the range of the scroll bars to fit the document, clamping their current values.
+     */
+    private void updateScrollRanges() {
+        double width = viewport.getWidth();
+        double height = viewport.getHeight();
+
+        double contentHeight = document.getLineCount() * lineHeight + 2 * PADDING;
+        vScrollBar.setMax(Math.max(0, contentHeight - height));
+        vScrollBar.setVisibleAmount(height);
+        vScrollBar.setUnitIncrement(lineHeight);
+        vScrollBar.setBlockIncrement(Math.max(lineHeight, height - lineHeight));
+        vScrollBar.setValue(clamp(vScrollBar.getValue(), 0, vScrollBar.getMax()));
+
+        double contentWidth = maxColumns * charWidth + 2 * PADDING;
+        hScrollBar.setMax(Math.max(0, contentWidth - width));
+        hScrollBar.setVisibleAmount(width);
+        hScrollBar.setUnitIncrement(charWidth);
+        hScrollBar.setBlockIncrement(Math.max(charWidth, width - charWidth));
+        hScrollBar.setValue(clamp(hScrollBar.getValue(), 0, hScrollBar.getMax()));
+    }
+
+    /**
+     * Scrolls the view so that the caret is visible.
+     */
+    private void scrollToCaret() {
+        double width = viewport.getWidth();
+        double height = viewport.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        int column = getColumn(caret);
+        maxColumns = Math.max(maxColumns, column + 1);
+        refreshing = true;
+        updateScrollRanges();
+        refreshing = false;
+
+        double top = document.getLineOfOffset(caret) * lineHeight;
+        if (top < vScrollBar.getValue()) {
+            vScrollBar.setValue(top);
+        } else if (top + lineHeight + 2 * PADDING > vScrollBar.getValue() + height) {
+            vScrollBar.setValue(Math.min(vScrollBar.getMax(), top + lineHeight + 2 * PADDING - height));
+        }
+
+        double left = column * charWidth;
+        if (left < hScrollBar.getValue()) {
+            hScrollBar.setValue(left);
+        } else if (left + charWidth + 2 * PADDING > hScrollBar.getValue() + width) {
+            hScrollBar.setValue(Math.min(hScrollBar.getMax(), left + charWidth + 2 * PADDING - width));
+        }
+    }
+
+    /**
+     * Builds the text displayed for the visible columns of a line, expanding tabs into spaces.
+     * @param start The offset of the start of the line.
+     * @param end The offset of the end of the line, excluding the line break.
+     * @param firstColumn The first visible column.
+     * @param lastColumn The column after the last visible column.
+     * @return The visible text of the line.
+     */
+    private String buildVisibleText(int start, int end, int firstColumn, int lastColumn) {
+        lineBuffer.setLength(0);
+        int column = 0;
+        int offset = start;
+        while (offset < end && column < lastColumn) {
+            char c = document.charAt(offset);
+            int width = getColumnWidth(c, column);
+            if (column + width > firstColumn && width > 0) {
+                if (c == '\t') {
+                    int spaces = Math.min(column + width, lastColumn) - Math.max(column, firstColumn);
+                    for (int i = 0; i < spaces; i++) {
+                        lineBuffer.append(' ');
+                    }
+                } else {
+                    lineBuffer.append(c);
+                }
+            }
+            column += width;
+            offset++;
+        }
+
+        // Track the widest line to size the horizontal scroll bar, estimating lines cut off by the viewport.
+        int lineColumns = offset < end ? Math.max(column, end - start) : column;
+        maxColumns = Math.max(maxColumns, lineColumns);
+
+        return lineBuffer.toString();
+    }
+
+    /**
+     * Returns the display column of the specified position within its line.
+     * @param pos A position within the document.
+     * @return The column of the position.
+     */
+    private int getColumn(int pos) {
+        int column = 0;
+        for (int offset = document.getLineStart(document.getLineOfOffset(pos)); offset < pos; offset++) {
+            column += getColumnWidth(document.charAt(offset), column);
+        }
+        return column;
+    }
+
+    /**
+     * Returns the position on a line closest to the specified display column.
+     * @param line The line.
+     * @param column The display column.
+     * @return The position within the document.
+     */
+    private int getPositionAtColumn(int line, int column) {
+        int end = getLineEnd(line);
+        int current = 0;
+        for (int offset = document.getLineStart(line); offset < end; offset++) {
+            int width = getColumnWidth(document.charAt(offset), current);
+            if (column < current + (width + 1) / 2) {
+                return offset;
+            }
+            current += width;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the document position displayed at the specified point in the viewport.
+     * @param x The x coordinate within the viewport.
+     * @param y The y coordinate within the viewport.
+     * @return The position within the document.
+     */
+    private int getPositionAt(double x, double y) {
+        int line = (int) Math.floor((y + vScrollBar.getValue() - PADDING) / lineHeight);
+        line = clamp(line, 0, document.getLineCount() - 1);
+        int column = (int) Math.round((x + hScrollBar.getValue() - PADDING) / charWidth);
+        return getPositionAtColumn(line, Math.max(0, column));
+    }
+
+    /**
+     * Returns the offset of the end of the specified line, excluding the line break.
+     * @param line The line.
+     * @return The offset of the end of the line.
+     */
+    private int getLineEnd(int line) {
+        if (line + 1 < document.getLineCount()) {
+            return document.getLineStart(line + 1) - 1;
+        } else {
+            return document.length();
+        }
+    }
+
+    /**
+     * Returns the number of columns taken up by a character.
+     * @param c The character.
+     * @param column The column the character is displayed at.
+     * @return The width of the character in columns.
+     */
+    private static int getColumnWidth(char c, int column) {
+        if (c == '\t') {
+            return TAB_SIZE - column % TAB_SIZE;
+        } else if (c == '\r') {
+            return 0;
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * Gets the text node used to display a visible line, creating it if required.
+     * @param index The index of the line within the visible lines.
+     * @return The text node.
+     */
+    private Text getLineNode(int index) {
+        while (lineNodes.size() <= index) {
+            Text lineNode = new Text();
+            lineNode.setFont(font);
+            lineNode.setTextOrigin(VPos.TOP);
+            lineNode.setManaged(false);
+            lineNodes.add(lineNode);
+            viewport.getChildren().add(viewport.getChildren().size() - 1, lineNode);
+        }
+        return lineNodes.get(index);
+    }
+
+    /**
+     * Gets the rectangle used to highlight the selection on a visible line, creating it if required.
+     * @param index The index of the line within the visible lines.
+     * @return The selection rectangle.
+     */
+    private Rectangle getSelectionNode(int index) {
+        while (selectionNodes.size() <= index) {
+            Rectangle selectionNode = new Rectangle();
+            selectionNode.setFill(SELECTION_COLOR);
+            selectionNode.setManaged(false);
+            selectionNodes.add(selectionNode);
+            viewport.getChildren().add(0, selectionNode);
+        }
+        return selectionNodes.get(index);
+    }
+
+    /**
+     * Handles key presses for caret movement, deletion, clipboard and undo operations.
+     * Unhandled keys are left unconsumed so that they reach the global keypress handler.
+     * @param keyEvent The key press event.
+     */
+    private void handleKeyPressed(KeyEvent keyEvent) {
+        boolean shift = keyEvent.isShiftDown();
+        boolean shortcut = keyEvent.isShortcutDown();
+        int column = targetColumn;
+
+        switch (keyEvent.getCode()) {
+            case LEFT:
+                if (caret != anchor && !shift) {
+                    positionCaret(Math.min(caret, anchor));
+                } else {
+                    moveCaret(getPreviousPosition(caret), shift);
+                }
+                break;
+            case RIGHT:
+                if (caret != anchor && !shift) {
+                    positionCaret(Math.max(caret, anchor));
+                } else {
+                    moveCaret(getNextPosition(caret), shift);
+                }
+                break;
+            case UP:
+                moveCaretVertically(-1, shift, column);
+                break;
+            case DOWN:
+                moveCaretVertically(1, shift, column);
+                break;
+            case PAGE_UP:
+                moveCaretVertically(-getPageLines(), shift, column);
+                break;
+            case PAGE_DOWN:
+                moveCaretVertically(getPageLines(), shift, column);
+                break;
+            case HOME:
+                moveCaret(shortcut ? 0 : document.getLineStart(document.getLineOfOffset(caret)), shift);
+                break;
+            case END:
+                moveCaret(shortcut ? document.length() : getLineEnd(document.getLineOfOffset(caret)), shift);
+                break;
+            case BACK_SPACE:
+                if (editable && caret == anchor) {
+                    anchor = getPreviousPosition(caret);
+                }
+                edit("");
+                break;
+            case DELETE:
+                if (editable && caret == anchor) {
+                    anchor = getNextPosition(caret);
+                }
+                edit("");
+                break;
+            case ENTER:
+                edit("\n");
+                break;
+            case TAB:
+                if (shortcut) {
+                    return;
+                }
+                edit("\t");
+                break;
+            case A:
+                if (!shortcut) {
+                    return;
+                }
+                selectRange(0, document.length());
+                break;
+            case C:
+                if (!shortcut) {
+                    return;
+                }
+                copy();
+                break;
+            case X:
+                if (!shortcut) {
+                    return;
+                }
+                copy();
+                edit("");
+                break;
+            case V:
+                if (!shortcut) {
+                    return;
+                }
+                paste();
+                break;
+            case Z:
+                if (!shortcut) {
+                    return;
+                }
+                if (shift) {
+                    redo();
+                } else {
+                    undo();
+                }
+                break;
+            case Y:
+                if (!shortcut) {
+                    return;
+                }
+                redo();
+                break;
+            default:
+                return;
+        }
+        keyEvent.consume();
+    }
+
+    /**
+     * Inserts typed characters at the caret, replacing the selection.
+     * @param keyEvent The key typed event.
+     */
+    private void handleKeyTyped(KeyEvent keyEvent) {
+        // Ignore shortcuts, except AltGr combinations which are reported as Ctrl+Alt.
+        boolean modified = keyEvent.isControlDown() || keyEvent.isAltDown() || keyEvent.isMetaDown();
+        if (modified && !(keyEvent.isControlDown() && keyEvent.isAltDown())) {
+            return;
+        }
+
+        // Ignore control characters, which are handled as key presses.
+        String character = keyEvent.getCharacter();
+        if (character.isEmpty() || character.charAt(0) < 0x20 || character.charAt(0) == 0x7F) {
+            return;
+        }
+
+        edit(character);
+        keyEvent.consume();
+    }
+
+    /**
+     * Moves the caret to the clicked position, extending the selection if shift is held.
+     * @param mouseEvent The mouse press event.
+     */
+    private void handleMousePressed(MouseEvent mouseEvent) {
+        requestFocus();
+        int pos = getPositionAt(mouseEvent.getX(), mouseEvent.getY());
+        selectRange(mouseEvent.isShiftDown() ? anchor : pos, pos);
+        mouseEvent.consume();
+    }
+
+    /**
+     * Extends the selection to the dragged position.
+     * @param mouseEvent The mouse drag event.
+     */
+    private void handleMouseDragged(MouseEvent mouseEvent) {
+        if (!isFocused()) {
+            return;
+        }
+        selectRange(anchor, getPositionAt(mouseEvent.getX(), mouseEvent.getY()));
+        mouseEvent.consume();
+    }
+
+    /**
+     * Scrolls the view with the mouse wheel or trackpad.
+     * @param scrollEvent The scroll event.
+     */
+    private void handleScroll(ScrollEvent scrollEvent) {
+        vScrollBar.setValue(clamp(vScrollBar.getValue() - scrollEvent.getDeltaY(), 0, vScrollBar.getMax()));
+        hScrollBar.setValue(clamp(hScrollBar.getValue() - scrollEvent.getDeltaX(), 0, hScrollBar.getMax()));
+        scrollEvent.consume();
+    }
+
+    /**
+     * Moves the caret to the specified position.
+     * @param pos The position to move to.
+     * @param extend {@code true} to extend the selection, {@code false} to clear it.
+     */
+    private void moveCaret(int pos, boolean extend) {
+        selectRange(extend ? anchor : pos, pos);
+    }
+
+    /**
+     * Moves the caret up or down by the specified number of lines, keeping its column.
+     * @param lines The number of lines to move by, negative to move up.
+     * @param extend {@code true} to extend the selection, {@code false} to clear it.
+     * @param column The column to keep the caret at, or -1 to use the caret's current column.
+     */
+    private void moveCaretVertically(int lines, boolean extend, int column) {
+        if (column < 0) {
+            column = getColumn(caret);
+        }
+        int line = clamp(document.getLineOfOffset(caret) + lines, 0, document.getLineCount() - 1);
+        moveCaret(getPositionAtColumn(line, column), extend);
+        targetColumn = column;
+    }
+
+    /**
+     * @return The number of lines scrolled by a page up or page down.
+     */
+    private int getPageLines() {
+        return Math.max(1, (int) (viewport.getHeight() / lineHeight) - 1);
+    }
+
+    /**
+     * Returns the caret position before the specified position, stepping over surrogate pairs.
+     * @param pos A position within the document.
+     * @return The previous position.
+     */
+    private int getPreviousPosition(int pos) {
+        if (pos >= 2 && Character.isLowSurrogate(document.charAt(pos - 1)) && Character.isHighSurrogate(document.charAt(pos - 2))) {
+            return pos - 2;
+        }
+        return Math.max(0, pos - 1);
+    }
+
+    /**
+     * Returns the caret position after the specified position, stepping over surrogate pairs.
+     * @param pos A position within the document.
+     * @return The next position.
+     */
+    private int getNextPosition(int pos) {
+        if (pos + 2 <= document.length() && Character.isHighSurrogate(document.charAt(pos)) && Character.isLowSurrogate(document.charAt(pos + 1))) {
+            return pos + 2;
+        }
+        return Math.min(document.length(), pos + 1);
+    }
+
+    /**
+     * Copies the selected text to the system clipboard.
+     */
+    private void copy() {
+        if (caret != anchor) {
+            ClipboardContent content = new ClipboardContent();
+            content.putString(getSelectedText());
+            Clipboard.getSystemClipboard().setContent(content);
+        }
+    }
+
+    /**
+     * Replaces the selection with the text on the system clipboard.
+     */
+    private void paste() {
+        Clipboard clipboard = Clipboard.getSystemClipboard();
+        if (clipboard.hasString()) {
+            edit(clipboard.getString());
+        }
+    }
+
+    /**
+     * Reverts the most recent change, if the text is editable, and moves the caret to the restored text.
+     */
+    private void undo() {
+        if (editable) {
+            int pos = history.undo();
+            if (pos >= 0) {
+                positionCaret(pos);
+            }
+        }
+    }
+
+    /**
+     * Reapplies the most recently undone change, if the text is editable, and moves the caret to the reinserted text.
+     */
+    private void redo() {
+        if (editable) {
+            int pos = history.redo();
+            if (pos >= 0) {
+                positionCaret(pos);
+            }
+        }
+    }
+
+    /**
+     * Replaces the selection with text entered by the user, if the text is editable.
+     * @param text The text to insert.
+     */
+    private void edit(String text) {
+        if (editable) {
+            replaceSelection(text);
+        }
+    }
+
+    /**
+     * Adjusts a position within the document to account for a change. Positions after the changed
+     * range are shifted, while a position at the offset of an insertion stays in place.
+     * @param pos The position to adjust.
+     * @param offset The position where the change occurred.
+     * @param removedLength The number of characters removed.
+     * @param insertedLength The number of characters inserted.
+     * @return The adjusted position.
+     */
+    private static int adjustPosition(int pos, int offset, int removedLength, int insertedLength) {
+        if (pos > offset + removedLength || (pos == offset + removedLength && removedLength > 0)) {
+            return pos - removedLength + insertedLength;
+        } else if (pos > offset) {
+            return offset;
+        } else {
+            return pos;
+        }
+    }
+
+    /**
+     * Clamps an integer to the specified range.
+     * @param value The value to clamp.
+     * @param min The minimum value.
+     * @param max The maximum value.
+     * @return The clamped value.
+     */
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * Clamps a double to the specified range.
+     * @param value The value to clamp.
+     * @param min The minimum value.
+     * @param max The maximum value.
+     * @return The clamped value.
+     */
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -4,7 +4,13 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import javafx.application.Platform;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.concurrent.Task;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
@@ -12,14 +18,19 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
-import javafx.scene.control.TextArea;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.ToolBar;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import org.python.core.PyException;
 
@@ -27,8 +38,17 @@ import texteditor.api.Plugin;
 import texteditor.app.ParseException;
 import texteditor.app.controller.APIProvider;
 import texteditor.app.controller.FileIO;
+import texteditor.app.controller.FileLoader;
+import texteditor.app.controller.FileSaver;
+import texteditor.app.controller.Macro;
+import texteditor.app.controller.PerformanceMonitor;
+import texteditor.app.controller.PerformanceMonitor.Operation;
 import texteditor.app.controller.PluginManager;
+import texteditor.app.model.CommandRegistry;
+import texteditor.app.model.Document;
+import texteditor.app.model.LatencyHistogram;
 import texteditor.app.model.Script;
+import texteditor.app.model.UndoHistory;
 
 /**
  * Main GUI for the application.
@@ -38,10 +58,33 @@ import texteditor.app.model.Script;
  */
 public class GUI
 {
-    /** Text area containing the editable text. */
-    private TextArea textArea = new TextArea();
+    /** The name of the command starting and stopping macro recording. */
+    public static final String RECORD_MACRO_COMMAND = "record-macro";
+    /** The name of the command playing the recorded macro. */
+    public static final String PLAY_MACRO_COMMAND = "play-macro";
+
+    /** The document containing the edited text. */
+    private Document document;
+    /** The undo history of the document. */
+    private UndoHistory history;
+    /** Editor view displaying the editable text. */
+    private EditorView editorView;
     /** Main tool bar of the application. */
     private ToolBar toolbar;
+    /** Status bar displaying the progress of loading or saving a file. */
+    private HBox statusBar;
+    /** Label describing the task in progress. */
+    private Label statusLabel;
+    /** Progress bar displaying the progress of the task. */
+    private ProgressBar progressBar;
+    /** Button used to cancel the task. */
+    private Button cancelButton;
+    /** The task or message displayed in the status bar, or {@code null} if the status bar is hidden. */
+    private Object statusOwner;
+    /** The task loading the current file, or {@code null} if no file is loading. */
+    private FileLoader fileLoader;
+    /** Whether a file is loading, during which the document cannot be saved. */
+    private final BooleanProperty loading = new SimpleBooleanProperty(false);
     /** Dialog used to select file encoding. */
     private Dialog<String> encodingDialog;
     /** The resource bundle containing the application's localised strings. */
@@ -54,23 +97,37 @@ public class GUI
     private KeyPressHandler kpHandler;
     /** Reference to the File I/O controller. */
     private FileIO fileIO;
+    /** Monitor timing plugins, scripts and file operations. */
+    private PerformanceMonitor monitor;
     /** Reference to the application's stage. */
     private Stage stage;
+    /** Button starting and stopping macro recording. */
+    private Button recordButton;
+    /** The most recently recorded macro, or {@code null} if none has been recorded. */
+    private Macro macro;
 
     /**
      * Constructs a new GUI object.
      * @param stage The JavaFX stage.
      * @param locale The current locale.
+     * @param document The document containing the edited text.
+     * @param history The undo history of the document.
      * @param fileio Reference to the File I/O controller.
      * @param pluginManager Reference to the plugin manager.
+     * @param api Reference to the api provider.
      * @param kpHandler Reference to the keypress handler.
+     * @param monitor Monitor timing plugins, scripts and file operations.
      */
-    public GUI(Stage stage, Locale locale, FileIO fileio, PluginManager pluginManager, APIProvider api, KeyPressHandler kpHandler) {
+    public GUI(Stage stage, Locale locale, Document document, UndoHistory history, FileIO fileio, PluginManager pluginManager, APIProvider api, KeyPressHandler kpHandler, PerformanceMonitor monitor) {
         this.stage = stage;
+        this.document = document;
+        this.history = history;
+        this.editorView = new EditorView(document, history);
         this.fileIO = fileio;
         this.pluginManager = pluginManager;
         this.api = api;
         this.kpHandler = kpHandler;
+        this.monitor = monitor;
 
         // Get the resource bundle for the specified locale.
         this.bundle = ResourceBundle.getBundle("bundle", locale);
@@ -90,31 +147,46 @@ public class GUI
         Button saveButton = new Button(bundle.getString("save"));
         Button pluginsButton = new Button(bundle.getString("plugins"));
         Button scriptsButton = new Button(bundle.getString("scripts"));
-        toolbar = new ToolBar(openButton,saveButton,pluginsButton,scriptsButton);
+        recordButton = new Button(bundle.getString("record_macro"));
+        Button playButton = new Button(bundle.getString("play_macro"));
+        toolbar = new ToolBar(openButton,saveButton,pluginsButton,scriptsButton,recordButton,playButton);
+
+        // Create status bar, shown while loading or saving a file.
+        statusLabel = new Label();
+        progressBar = new ProgressBar();
+        cancelButton = new Button(bundle.getString("cancel"));
+        statusBar = new HBox(8, statusLabel, progressBar, cancelButton);
+        statusBar.setStyle("-fx-padding: 4; -fx-alignment: center-left");
+        statusBar.setVisible(false);
+        statusBar.setManaged(false);
 
         // Subtle user experience tweaks
         toolbar.setFocusTraversable(false);
         toolbar.getItems().forEach(btn -> btn.setFocusTraversable(false));
-        textArea.setStyle("-fx-font-family: 'monospace'"); // Set the font
+        cancelButton.setFocusTraversable(false);
         
         // Add the main parts of the UI to the window.
         BorderPane mainBox = new BorderPane();
         mainBox.setTop(toolbar);
-        mainBox.setCenter(textArea);
+        mainBox.setCenter(editorView);
+        mainBox.setBottom(statusBar);
         Scene scene = new Scene(mainBox);        
         
         // Setup Button event handlers.
         openButton.setOnAction(event -> openFile());
         saveButton.setOnAction(event -> saveFile());
+        saveButton.disableProperty().bind(loading);
         pluginsButton.setOnAction(event -> showPluginsDialog());
         scriptsButton.setOnAction(event -> showScriptsDialog());
+        recordButton.setOnAction(event -> toggleMacroRecording());
+        playButton.setOnAction(event -> showPlayMacroDialog());
 
-        // Notify text modification handlers when text modified.
-        textArea.textProperty().addListener((object, oldValue, newValue) -> {
-            //This must run after caret position is updated to allow API calls to get the correct postion.
-            //Hence using Platform.runLater to ensure caret is updated.
-            Platform.runLater(()->api.notifyModifyEvent());
-        });
+        // Add the macro commands, bound to F7 and F8 unless bound to other keys by the keymap file or plugins.
+        CommandRegistry commands = api.getCommands();
+        commands.register(RECORD_MACRO_COMMAND, this::toggleMacroRecording);
+        commands.register(PLAY_MACRO_COMMAND, () -> playMacro(1));
+        commands.bind(CommandRegistry.functionKey(7), RECORD_MACRO_COMMAND);
+        commands.bind(CommandRegistry.functionKey(8), PLAY_MACRO_COMMAND);
 
         // Set up global keypress handler
         // Load key mappings.
@@ -126,22 +198,34 @@ public class GUI
             new Alert(Alert.AlertType.ERROR, String.format(bundle.getString("error_parsing_keymaps")), ButtonType.CLOSE).showAndWait();
         }
 
-        // Set key event handler.
-        scene.setOnKeyPressed(keyEvent -> {
+        // Reload the key mappings whenever the keymap file is changed.
+        try {
+            kpHandler.watchKeyMappings(() -> showMessage(bundle.getString("keymaps_reloaded")),
+                    e -> showMessage(String.format(bundle.getString("error_reloading_keymaps")+" %s", e.getMessage())));
+        } catch (IOException e) { // The keymap file will only be loaded at startup.
+            showMessage(String.format(bundle.getString("error_loading_keymaps")+" %s", e.getMessage()));
+        }
+
+        // Set key event filters, so key mappings see key presses before the editor handles them.
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, keyEvent -> {
             kpHandler.handleKeyEvent(keyEvent);
         });
+        scene.addEventFilter(KeyEvent.KEY_TYPED, keyEvent -> {
+            kpHandler.handleKeyTypedEvent(keyEvent);
+        });
         
         // Show window.
         stage.setScene(scene);
         stage.sizeToScene();
         stage.show();
+        editorView.requestFocus();
     }
     
     /**
-     * @return The TextArea object containing the editable text.
+     * @return The EditorView object displaying the editable text.
      */
-    public TextArea getTextArea() {
-        return textArea;
+    public EditorView getEditorView() {
+        return editorView;
     }
 
     /**
@@ -160,19 +244,48 @@ public class GUI
         // Set the button press handler.
         loadButton.setOnAction(event -> loadPlugin());
         
-        // Setup the list to display the updated list of loaded plugins.
+        // Setup the list to display the updated list of loaded plugins, and how long their callbacks take.
         ListView<Plugin> listView = new ListView<>(pluginManager.getPlugins());
+        showTimings(listView);
+
+        // Display how long the editor's own operations take.
+        Label operationsLabel = new Label();
+        operationsLabel.setStyle("-fx-padding: 4");
+        Runnable updateOperations = () -> {
+            StringBuilder text = new StringBuilder();
+            appendTimings(text, bundle.getString("load_file_timings"), monitor.getHistogram(Operation.LOAD_FILE));
+            appendTimings(text, bundle.getString("save_file_timings"), monitor.getHistogram(Operation.SAVE_FILE));
+            appendTimings(text, bundle.getString("keymap_timings"), monitor.getHistogram(Operation.KEYMAP_ACTION));
+            operationsLabel.setText(text.toString().strip());
+        };
+        updateOperations.run();
+
+        // Display the commands added by plugins and scripts, and the keys bound to them.
+        Label commandsLabel = new Label();
+        commandsLabel.setStyle("-fx-padding: 4");
+        Runnable updateCommands = () -> {
+            StringBuilder text = new StringBuilder(bundle.getString("commands"));
+            kpHandler.getCommandBindings().forEach((name, keys) ->
+                    text.append('\n').append(name).append(": ").append(String.join(", ", keys)));
+            commandsLabel.setText(text.toString());
+        };
+        updateCommands.run();
         
         // Set up and display dialog
         BorderPane box = new BorderPane();
         box.setTop(toolBar);
         box.setCenter(listView);
+        box.setBottom(new VBox(operationsLabel, commandsLabel));
         
         var dialog = new Dialog<>();
         dialog.setTitle(bundle.getString("plugins"));
         dialog.getDialogPane().setContent(box);
         dialog.getDialogPane().getButtonTypes().add(ButtonType.OK);
-        dialog.showAndWait();
+        showAndRefresh(dialog, () -> {
+            listView.refresh();
+            updateOperations.run();
+            updateCommands.run();
+        });
     }
 
     /** Displays the script list dialog. */
@@ -183,8 +296,9 @@ public class GUI
         // Set the button press handler
         loadButton.setOnAction(event -> loadScript());
 
-        // Setup the list to display the updated list of loaded scripts.
+        // Setup the list to display the updated list of loaded scripts, and how long their callbacks take.
         ListView<Script> listView = new ListView<>(pluginManager.getScripts());
+        showTimings(listView);
 
         // Set up and display dialog
         BorderPane box = new BorderPane();
@@ -195,7 +309,78 @@ public class GUI
         dialog.setTitle(bundle.getString("scripts"));
         dialog.getDialogPane().setContent(box);
         dialog.getDialogPane().getButtonTypes().add(ButtonType.OK);
-        dialog.showAndWait();
+        showAndRefresh(dialog, listView::refresh);
+    }
+
+    /**
+     * Displays how long the callbacks of each plugin or script in the specified list take,
+     * highlighting those that have taken longer than the per-keystroke budget.
+     * @param <T> The type of the plugins or scripts.
+     * @param listView The list of plugins or scripts.
+     */
+    private <T> void showTimings(ListView<T> listView) {
+        listView.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(T item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                    setStyle("");
+                } else {
+                    StringBuilder text = new StringBuilder(item.toString());
+                    LatencyHistogram histogram = monitor.getHistogram(item);
+                    boolean slow = histogram != null && histogram.getOverBudget() > 0;
+                    appendTimings(text, "", histogram);
+                    if (slow) {
+                        text.append('\n').append(String.format(bundle.getString("over_budget"),
+                                histogram.getOverBudget(), formatMillis(monitor.getBudget().toMillis())));
+                    }
+                    setText(text.toString());
+                    setStyle(slow ? "-fx-text-fill: firebrick" : "");
+                }
+            }
+        });
+    }
+
+    /**
+     * Appends a line describing the specified histogram, if any durations have been recorded.
+     * @param text The text to append to.
+     * @param title The title of the line.
+     * @param histogram The histogram, or {@code null} if nothing has been timed.
+     */
+    private void appendTimings(StringBuilder text, String title, LatencyHistogram histogram) {
+        if (histogram != null && histogram.getCount() > 0) {
+            text.append('\n').append(title).append(String.format(bundle.getString("timings"),
+                    formatMillis(histogram.getPercentile(0.5) / 1e6),
+                    formatMillis(histogram.getPercentile(0.99) / 1e6),
+                    formatMillis(histogram.getMax() / 1e6),
+                    histogram.getCount()));
+        }
+    }
+
+    /**
+     * Formats a duration in milliseconds for display.
+     * @param millis The duration (in milliseconds).
+     * @return The formatted duration.
+     */
+    private String formatMillis(double millis) {
+        return String.format(bundle.getLocale(), "%.2f", millis);
+    }
+
+    /**
+     * Displays the specified dialog, refreshing its contents every second until it is closed.
+     * @param dialog The dialog to display.
+     * @param refresh The action refreshing the dialog's contents.
+     */
+    private void showAndRefresh(Dialog<?> dialog, Runnable refresh) {
+        Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(1), event -> refresh.run()));
+        timeline.setCycleCount(Animation.INDEFINITE);
+        timeline.play();
+        try {
+            dialog.showAndWait();
+        } finally {
+            timeline.stop();
+        }
     }
 
     /**
@@ -236,24 +421,132 @@ public class GUI
 
             File file = fileDialog.showOpenDialog(stage);
             if (file != null) {
-                try {
-                    // Load the file.
-                    String contents = fileIO.load(file, encoding);
-                    // Set the editable text to the contents of the file.
-                    textArea.setText(contents);
-                } catch (IOException e) { // Errors while loading the file.
-                    new Alert(Alert.AlertType.ERROR,
-                            String.format(bundle.getString("error_loading")+" %s: %s", e.getClass().getName(), e.getMessage()),
-                            ButtonType.CLOSE).showAndWait();
-                }
+                // Load the file into the document in the background.
+                loadFile(file, encoding);
             }
         }
     }
 
+    /**
+     * Starts loading the specified file into the document on a background thread,
+     * displaying the start of the file and the loading progress while the rest of the file loads.
+     * @param file The file to load.
+     * @param encoding The encoding to use.
+     */
+    private void loadFile(File file, String encoding) {
+        // Stop loading any previous file.
+        if (fileLoader != null) {
+            fileLoader.cancel();
+        }
+
+        FileLoader loader = new FileLoader(fileIO, document, file, encoding);
+        fileLoader = loader;
+        loading.set(true);
+        api.setLoading(true);
+        long start = System.nanoTime();
+        editorView.positionCaret(0);
+        editorView.setEditable(false);
+        history.setRecording(false);
+        showProgress(loader, bundle.getString("loading"));
+
+        loader.setOnSucceeded(event -> {
+            monitor.record(Operation.LOAD_FILE, System.nanoTime() - start);
+            finishLoading(loader);
+        });
+        loader.setOnCancelled(event -> {
+            // Discard the partially loaded file.
+            if (fileLoader == loader) {
+                document.setText("");
+            }
+            finishLoading(loader);
+        });
+        loader.setOnFailed(event -> { // Errors while loading the file.
+            finishLoading(loader);
+            Throwable e = loader.getException();
+            new Alert(Alert.AlertType.ERROR,
+                    String.format(bundle.getString("error_loading")+" %s: %s", e.getClass().getName(), e.getMessage()),
+                    ButtonType.CLOSE).showAndWait();
+        });
+
+        Thread thread = new Thread(loader);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Hides the loading progress and makes the text editable once the specified loading task has finished,
+     * if it is the current task.
+     * @param loader The loading task that finished.
+     */
+    private void finishLoading(FileLoader loader) {
+        if (fileLoader == loader) {
+            fileLoader = null;
+            loading.set(false);
+            api.setLoading(false);
+            editorView.setEditable(true);
+            history.clear();
+            history.setRecording(true);
+        }
+        hideStatus(loader);
+    }
+
+    /**
+     * Displays the progress of the specified task in the status bar, with a button to cancel the task.
+     * @param task The task in progress.
+     * @param message The message describing the task.
+     */
+    private void showProgress(Task<?> task, String message) {
+        statusOwner = task;
+        statusLabel.setText(message);
+        progressBar.progressProperty().bind(task.progressProperty());
+        progressBar.setVisible(true);
+        cancelButton.setOnAction(event -> task.cancel());
+        cancelButton.setVisible(true);
+        statusBar.setVisible(true);
+        statusBar.setManaged(true);
+    }
+
+    /**
+     * Displays a message in the status bar for a few seconds, if no task is in progress.
+     * @param message The message to display.
+     */
+    private void showMessage(String message) {
+        if (statusOwner == null) {
+            Object owner = new Object();
+            statusOwner = owner;
+            statusLabel.setText(message);
+            progressBar.setVisible(false);
+            cancelButton.setVisible(false);
+            statusBar.setVisible(true);
+            statusBar.setManaged(true);
+
+            PauseTransition delay = new PauseTransition(Duration.seconds(3));
+            delay.setOnFinished(event -> hideStatus(owner));
+            delay.play();
+        }
+    }
+
+    /**
+     * Hides the status bar if it is displaying the specified task or message.
+     * @param owner The task that finished, or the message to hide.
+     */
+    private void hideStatus(Object owner) {
+        if (statusOwner == owner) {
+            statusOwner = null;
+            progressBar.progressProperty().unbind();
+            statusBar.setVisible(false);
+            statusBar.setManaged(false);
+        }
+    }
+
     /**
      * Prompts the user to select an encoding and select a filename to save the file as.
+     * Does nothing while a file is loading, as only part of the file would be saved.
      */
     private void saveFile() {
+        if (loading.get()) {
+            return;
+        }
         // Prompt the user to select an encoding.
         String encoding = getEncoding();
         if (encoding != null) {
@@ -263,15 +556,97 @@ public class GUI
             fileDialog.setTitle(bundle.getString("save"));
 
             File file = fileDialog.showSaveDialog(stage);
-            if (file != null) {
-                try {
-                    // Save the edited text to file using the specified encoding.
-                    fileIO.save(file, textArea.getText(), encoding);
-                } catch (IOException e) { // Errors while writing the file.
+            if (file != null && !loading.get()) {
+                // Save a snapshot of the edited text to file in the background, using the specified encoding.
+                FileSaver saver = new FileSaver(fileIO, document.snapshot(), file, encoding);
+                showProgress(saver, bundle.getString("saving"));
+                long start = System.nanoTime();
+
+                saver.setOnSucceeded(event -> {
+                    monitor.record(Operation.SAVE_FILE, System.nanoTime() - start);
+                    hideStatus(saver);
+                    showMessage(bundle.getString("saved"));
+                });
+                saver.setOnCancelled(event -> hideStatus(saver));
+                saver.setOnFailed(event -> { // Errors while writing the file.
+                    hideStatus(saver);
                     new Alert(Alert.AlertType.ERROR,
-                            String.format(bundle.getString("error_saving")+" %s", e.getMessage()),
+                            String.format(bundle.getString("error_saving")+" %s", saver.getException().getMessage()),
                             ButtonType.CLOSE).showAndWait();
+                });
+
+                Thread thread = new Thread(saver);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Starts recording a macro, or stops recording and keeps the recorded macro for playing.
+     */
+    private void toggleMacroRecording() {
+        if (api.isRecording()) {
+            Macro recorded = api.stopRecording();
+            if (!recorded.isEmpty()) {
+                macro = recorded;
+            }
+            recordButton.setText(bundle.getString("record_macro"));
+            showMessage(String.format(bundle.getString("macro_recorded"), recorded.size()));
+        } else {
+            api.startRecording();
+            recordButton.setText(bundle.getString("stop_recording"));
+            showMessage(bundle.getString("recording_macro"));
+        }
+    }
+
+    /**
+     * Plays the recorded macro once on each selected line, or the specified number of times at the caret
+     * position if no text is selected. The edits are undone as a single step.
+     * Does nothing while a file is loading.
+     * @param times The number of times to play the macro if no text is selected.
+     */
+    private void playMacro(int times) {
+        if (loading.get()) {
+            return;
+        }
+        if (macro == null) {
+            showMessage(bundle.getString("no_macro"));
+            return;
+        }
+        int anchor = editorView.getAnchor();
+        int caret = editorView.getCaretPosition();
+        if (anchor != caret) {
+            api.replayMacroOnLines(macro, Math.min(anchor, caret), Math.max(anchor, caret));
+        } else {
+            api.replayMacro(macro, times);
+        }
+    }
+
+    /**
+     * Prompts the user for the number of times to play the recorded macro, unless text is selected,
+     * in which case the macro is played once on each selected line.
+     */
+    private void showPlayMacroDialog() {
+        if (macro == null || editorView.getAnchor() != editorView.getCaretPosition()) {
+            playMacro(1);
+            return;
+        }
+
+        var dialog = new TextInputDialog("1");
+        dialog.setTitle(bundle.getString("play_macro"));
+        dialog.setHeaderText(bundle.getString("macro_times_prompt"));
+
+        String input = dialog.showAndWait().orElse(null);
+        if (input != null) {
+            try {
+                int times = Integer.parseInt(input.trim());
+                if (times < 1) {
+                    throw new NumberFormatException();
                 }
+                playMacro(times);
+            } catch (NumberFormatException e) { // Not a positive whole number.
+                showMessage(bundle.getString("invalid_macro_times"));
             }
         }
     }
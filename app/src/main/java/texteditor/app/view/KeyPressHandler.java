@@ -1,16 +1,30 @@
 package texteditor.app.view;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import javafx.scene.input.KeyCode;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyEvent;
+import javafx.util.Duration;
 
 import texteditor.app.controller.APIProvider;
+import texteditor.app.controller.KeyDispatchEvent;
+import texteditor.app.controller.KeymapCache;
+import texteditor.app.controller.KeymapWatcher;
+import texteditor.app.controller.PerformanceMonitor;
+import texteditor.app.controller.PerformanceMonitor.Operation;
+import texteditor.app.model.CommandRegistry;
 import texteditor.app.model.KeyMapping;
+import texteditor.app.model.KeymapTrie;
 import texteditor.app.model.KeyMapping.KeymapAction;
 import texteditor.app.model.KeyMapping.KeymapPosition;
-import texteditor.app.KeymapParser;
 import texteditor.app.ParseException;
 
 /**
@@ -23,99 +37,240 @@ public class KeyPressHandler {
     /** The name of the file where custom key mappings are stored. */
     private static final String KEYMAP_FILENAME = "keymap";
 
+    /** The longest pause between the key presses of a sequence before the partial sequence is abandoned. */
+    public static final Duration SEQUENCE_TIMEOUT = Duration.seconds(2);
+
     /** Back reference to the API. */
     private APIProvider api;
 
-    /** List of custom key mappings. */
-    private List<KeyMapping> keymaps = new LinkedList<>();
+    /** Registry of the commands that keys can be bound to. */
+    private CommandRegistry commands;
+
+    /** Monitor timing the key mapping actions. */
+    private PerformanceMonitor monitor;
+
+    /** Prefix tree of the custom key mappings, by the key code and modifiers of each key in their sequence. */
+    private KeymapTrie keymaps = new KeymapTrie(List.of());
+
+    /** The state reached by the keys pressed so far in a partial sequence, or the root if there is none. */
+    private KeymapTrie.Node sequence = keymaps.getRoot();
+
+    /** The time of the last key press that advanced the sequence (in nanoseconds). */
+    private long lastKeyPress;
+
+    /** Whether the last key press advanced or completed a key sequence, or invoked a command. */
+    private boolean handled = false;
 
     /**
      * Constructs a new KeyPressHandler object.
      * 
      * @param api Back reference to the API.
+     * @param commands Registry of the commands that keys can be bound to.
+     * @param monitor Monitor timing the key mapping actions.
      */
-    public KeyPressHandler(APIProvider api) {
+    public KeyPressHandler(APIProvider api, CommandRegistry commands, PerformanceMonitor monitor) {
         this.api = api;
+        this.commands = commands;
+        this.monitor = monitor;
     }
 
     /**
-     * Invokes the DSL parser to load and set the custom key mappings from the default file.
+     * Loads and sets the custom key mappings from the default file, invoking the DSL parser if it is not cached.
      * @throws IOException If the file could not be found or there were errors reading the file.
      * @throws ParseException If there are any errors while parsing the key mappings.
      */
     public void loadKeyMappings() throws IOException, ParseException {
-        keymaps.addAll(KeymapParser.parse(KEYMAP_FILENAME));
+        loadKeyMappings(KEYMAP_FILENAME);
+    }
+
+    /**
+     * Loads and sets the custom key mappings from the specified file, invoking the DSL parser if it is not cached.
+     * @param filename The name of the keymap file.
+     * @throws IOException If the file could not be found or there were errors reading the file.
+     * @throws ParseException If there are any errors while parsing the key mappings.
+     */
+    public void loadKeyMappings(String filename) throws IOException, ParseException {
+        setKeyMappings(new KeymapTrie(KeymapCache.load(filename)));
+    }
+
+    /**
+     * Replaces the custom key mappings, abandoning any partial key sequence.
+     * Must be called on the JavaFX application thread, so the mappings are not replaced during a key press.
+     * @param keymaps The compiled key mappings.
+     */
+    public void setKeyMappings(KeymapTrie keymaps) {
+        this.keymaps = keymaps;
+        sequence = keymaps.getRoot();
+    }
+
+    /**
+     * Starts reloading the custom key mappings from the default file whenever it changes.
+     * The file is parsed on a background thread, and the current mappings are kept if it could not be loaded.
+     * @param onReloaded Callback run on the application thread after the mappings are replaced.
+     * @param onFailed Callback receiving the error on the application thread if the file could not be reloaded.
+     * @throws IOException If the file could not be watched.
+     */
+    public void watchKeyMappings(Runnable onReloaded, Consumer<Throwable> onFailed) throws IOException {
+        new KeymapWatcher(Paths.get(KEYMAP_FILENAME), keymaps -> {
+            setKeyMappings(keymaps);
+            onReloaded.run();
+        }, onFailed).start();
     }
 
     /**
-     * Handles the given key press event.
+     * Lists the key sequences bound to each command, by the keymap file or by plugins and scripts.
+     * Bindings overridden by the keymap file are left out.
+     * @return The display text of the key sequences bound to each command, by command name.
+     */
+    public Map<String, List<String>> getCommandBindings() {
+        Map<String, List<String>> bindings = new LinkedHashMap<>();
+        for (String name : commands.getCommandNames()) {
+            bindings.put(name, new ArrayList<>());
+        }
+
+        Set<List<KeyCodeCombination>> mapped = new HashSet<>();
+        for (KeyMapping keymap : keymaps.getMappings()) {
+            mapped.add(keymap.getKeySequence());
+            if (keymap.getAction() == KeymapAction.COMMAND) {
+                StringJoiner keys = new StringJoiner(" ");
+                for (KeyCodeCombination combo : keymap.getKeySequence()) {
+                    keys.add(combo.getDisplayText());
+                }
+                bindings.computeIfAbsent(keymap.getString(), name -> new ArrayList<>()).add(keys.toString());
+            }
+        }
+        for (Map.Entry<KeyCodeCombination, String> binding : commands.getBindings().entrySet()) {
+            if (!mapped.contains(List.of(binding.getKey()))) {
+                bindings.computeIfAbsent(binding.getValue(), name -> new ArrayList<>()).add(binding.getKey().getDisplayText());
+            }
+        }
+        return bindings;
+    }
+
+    /**
+     * Handles the given key press event. The event is consumed if it advanced or completed a key sequence,
+     * or invoked a command, so it is not also handled by the editor, eg. as a cut or by typing the key.
+     * Key presses should be passed to the handler before the editor, by an event filter.
      * @param keyEvent The key press event to handle.
      */
     public void handleKeyEvent(KeyEvent keyEvent) {
-        handleFunctionKeyPresses(keyEvent);
-        handleKeyComboPresses(keyEvent);
+        KeyDispatchEvent event = new KeyDispatchEvent();
+        event.begin();
+        handled = false;
+        int mappings = handleKeyComboPresses(keyEvent);
+        event.end();
+        if (event.shouldCommit()) {
+            event.set(keyEvent.getCode().getName(), mappings);
+            event.commit();
+        }
+        if (handled) {
+            keyEvent.consume();
+        }
+    }
+
+    /**
+     * Handles the given key typed event, consuming it if the key press that typed it was consumed,
+     * so the key is not typed into the text.
+     * @param keyEvent The key typed event to handle.
+     */
+    public void handleKeyTypedEvent(KeyEvent keyEvent) {
+        if (handled) {
+            keyEvent.consume();
+        }
     }
 
     /**
-     * Handles function key press events and notifies any function key handlers.
+     * Handles key combination presses, advancing through the key sequences of the custom key mappings.
+     * <p>
+     * The actions of all mappings whose sequence is completed by the key press are performed. If the
+     * sequence of another mapping continues from there, the following key press carries on from this state.
+     * A key press that breaks a partial sequence, or that follows a pause longer than {@link #SEQUENCE_TIMEOUT},
+     * starts again from the first key. A key press matching no custom key mapping invokes the command bound to it.
      * @param keyEvent The key press event to handle.
+     * @return The number of key mappings whose action was performed.
      */
-    private void handleFunctionKeyPresses(KeyEvent keyEvent) {
-        // Check if the pressed key is a valid function key.
-        KeyCode key = keyEvent.getCode();
-        if (key.isFunctionKey()) {
-            int keyNum;
-            switch (key) {
-                case F1: keyNum = 1; break;
-                case F2: keyNum = 2; break;
-                case F3: keyNum = 3; break;
-                case F4: keyNum = 4; break;
-                case F5: keyNum = 5; break;
-                case F6: keyNum = 6; break;
-                case F7: keyNum = 7; break;
-                case F8: keyNum = 8; break;
-                case F9: keyNum = 9; break;
-                case F10: keyNum = 10; break;
-                case F11: keyNum = 11; break;
-                case F12: keyNum = 11; break;
-                default: keyNum = 0;
-            }
-            if (keyNum != 0) {
-                // Notify all function keypress handlers that the specified key was pressed.
-                api.notifyFunctionKeyPress(keyNum);
-            }
+    private int handleKeyComboPresses(KeyEvent keyEvent) {
+        // Pressing a modifier key on its own neither advances nor breaks a sequence.
+        if (keyEvent.getCode().isModifierKey()) {
+            return 0;
+        }
+
+        KeymapTrie.Node root = keymaps.getRoot();
+        long now = System.nanoTime();
+        if (sequence != root && now - lastKeyPress > SEQUENCE_TIMEOUT.toMillis() * 1_000_000) {
+            sequence = root;
+        }
+        lastKeyPress = now;
+
+        KeymapTrie.Node next = sequence.next(keyEvent);
+        if (next == null && sequence != root) {
+            // The partial sequence is broken, but the key may start another.
+            next = root.next(keyEvent);
+        }
+        if (next == null) {
+            sequence = root;
+            return handleBoundKey(keyEvent);
         }
+        sequence = next.isPrefix() ? next : root;
+        handled = next.isPrefix();
+
+        int performed = 0;
+        // Perform the actions of the custom key mappings completed by the key combination.
+        for (KeyMapping keymap : next.getMappings(keyEvent)) {
+            monitor.time(Operation.KEYMAP_ACTION, () -> performAction(keymap));
+            performed++;
+            handled = true;
+        }
+        return performed;
     }
-    
+
     /**
-     * Handles key combination presses.
+     * Invokes the command bound to a key press that matches no custom key mapping. A function key that is
+     * not bound to a command is passed to the function key handlers registered through the deprecated API.
      * @param keyEvent The key press event to handle.
+     * @return 1 if a command was invoked, 0 otherwise.
      */
-    private void handleKeyComboPresses(KeyEvent keyEvent) {
-        // Check all custom key mappings.
-        for (KeyMapping keymap : keymaps) {
-            // Check if the key event matches the key combination.
-            if (keymap.matches(keyEvent)) {
-                
-                // Perform the mapped action.
-                KeymapAction action = keymap.getAction();
-                KeymapPosition pos = keymap.getPosition();
-                String string = keymap.getString();
-
-                if (action == KeymapAction.INSERT) {
-                    if (pos == KeymapPosition.CARET) {
-                        api.insertText(string);
-                    } else if (pos == KeymapPosition.SOL) {
-                        api.insertTextAtSOL(string);
-                    }
-                } else if (action == KeymapAction.DELETE) {
-                    if (pos == KeymapPosition.CARET) {
-                        api.removeTextBeforeCaret(string);
-                    } else if (pos == KeymapPosition.SOL) {
-                        api.removeTextAtSOL(string);
-                    }
-                }
+    private int handleBoundKey(KeyEvent keyEvent) {
+        String command = commands.getCommand(keyEvent);
+        if (command != null) {
+            handled = commands.invoke(command);
+            return handled ? 1 : 0;
+        }
+
+        int keyNum = CommandRegistry.getFunctionKeyNumber(keyEvent.getCode());
+        if (keyNum != 0) {
+            // Notify all function keypress handlers that the specified key was pressed.
+            api.notifyFunctionKeyPress(keyNum);
+        }
+        return 0;
+    }
+
+    /**
+     * Performs the action of the specified key mapping, unless a file is loading.
+     * @param keymap The key mapping that was pressed.
+     */
+    private void performAction(KeyMapping keymap) {
+        if (api.isLoading()) {
+            return;
+        }
+        KeymapAction action = keymap.getAction();
+        KeymapPosition pos = keymap.getPosition();
+        String string = keymap.getString();
+
+        if (action == KeymapAction.INSERT) {
+            if (pos == KeymapPosition.CARET) {
+                api.insertText(string);
+            } else if (pos == KeymapPosition.SOL) {
+                api.insertTextAtSOL(string);
+            }
+        } else if (action == KeymapAction.DELETE) {
+            if (pos == KeymapPosition.CARET) {
+                api.removeTextBeforeCaret(string);
+            } else if (pos == KeymapPosition.SOL) {
+                api.removeTextAtSOL(string);
             }
+        } else if (action == KeymapAction.COMMAND) {
+            commands.invoke(string);
         }
     }
-}
+}
\ No newline at end of file
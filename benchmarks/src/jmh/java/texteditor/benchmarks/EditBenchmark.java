@@ -0,0 +1,64 @@
+package texteditor.benchmarks;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import texteditor.app.controller.HeadlessAPI;
+import texteditor.app.model.Document;
+
+/**
+ * Benchmarks the edits made through the API, inserting at the caret and at the start of the line,
+ * on documents from 1 KB to 100 MB. The caret starts in the middle of the document.
+ *
+ * @author Rohan Khayech
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EditBenchmark {
+
+    /** The length of the document (in characters). */
+    @Param({"1024", "1048576", "104857600"})
+    public int size;
+
+    /** The API over the edited document. */
+    private HeadlessAPI api;
+
+    /** Creates a new document before each iteration, so edits do not accumulate between iterations. */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Document document = new Document();
+        document.setText(Texts.generate(size));
+        api = new HeadlessAPI(Locale.ENGLISH, document);
+        api.setCaretPosition(size / 2);
+    }
+
+    /**
+     * Inserts a character at the caret, as when typing.
+     * @return The new caret position.
+     */
+    @Benchmark
+    public int insertAtCaret() {
+        api.insertText("x");
+        return api.getCaretPosition();
+    }
+
+    /**
+     * Inserts a comment marker at the start of the caret's line, as the default key mappings do.
+     * @return The new caret position.
+     */
+    @Benchmark
+    public int insertAtStartOfLine() {
+        api.insertTextAtSOL("//");
+        return api.getCaretPosition();
+    }
+}
@@ -0,0 +1,99 @@
+package texteditor.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import texteditor.app.controller.FileIO;
+import texteditor.app.model.LineIndex;
+
+/**
+ * Benchmarks loading and saving files in each supported encoding. Loading is measured both by decoding
+ * the whole file into memory and by memory-mapping it and building its line index, as the editor does
+ * for large files.
+ *
+ * @author Rohan Khayech
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileIOBenchmark {
+
+    /** The encoding of the file. */
+    @Param({"UTF-8", "UTF-16", "UTF-32"})
+    public String encoding;
+
+    /** The length of the file's text (in characters). */
+    @Param({"1048576", "104857600"})
+    public int size;
+
+    /** The File I/O controller. */
+    private FileIO fileIO = new FileIO();
+    /** The text to save. */
+    private String text;
+    /** The file loaded from. */
+    private File loadFile;
+    /** The file saved to. */
+    private File saveFile;
+
+    /**
+     * Writes the file to load.
+     * @throws IOException If the file could not be written.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        text = Texts.generate(size);
+        loadFile = Files.createTempFile("load", ".txt").toFile();
+        saveFile = Files.createTempFile("save", ".txt").toFile();
+        fileIO.save(loadFile, text, encoding);
+    }
+
+    /**
+     * Deletes the files.
+     * @throws IOException If the files could not be deleted.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(loadFile.toPath());
+        Files.deleteIfExists(saveFile.toPath());
+    }
+
+    /**
+     * Decodes the whole file into memory.
+     * @return The file's text.
+     * @throws IOException If the file could not be loaded.
+     */
+    @Benchmark
+    public String load() throws IOException {
+        return fileIO.load(loadFile, encoding);
+    }
+
+    /**
+     * Memory-maps the file and builds its line index, decoding the whole file once.
+     * @return The line index.
+     * @throws IOException If the file could not be mapped.
+     */
+    @Benchmark
+    public LineIndex map() throws IOException {
+        return new LineIndex(fileIO.map(loadFile, encoding));
+    }
+
+    /**
+     * Encodes and writes the text to the file.
+     * @throws IOException If the file could not be saved.
+     */
+    @Benchmark
+    public void save() throws IOException {
+        fileIO.save(saveFile, text, encoding);
+    }
+}
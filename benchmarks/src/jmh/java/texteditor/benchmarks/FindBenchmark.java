@@ -0,0 +1,75 @@
+package texteditor.benchmarks;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import texteditor.FindPlugin;
+import texteditor.app.controller.HeadlessAPI;
+import texteditor.app.model.Document;
+
+/**
+ * Benchmarks the find plugin searching from the start of the document for a term found only at the end,
+ * with and without an edit to the document since the previous search.
+ *
+ * @author Rohan Khayech
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FindBenchmark {
+
+    /** The function key that triggers the find plugin. */
+    private static final int FIND_KEY = 3;
+
+    /** The length of the document (in characters). */
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+
+    /** The API over the searched document. */
+    private HeadlessAPI api;
+
+    /** Creates the document and starts the plugin. */
+    @Setup
+    public void setUp() {
+        Document document = new Document();
+        document.setText(Texts.generate(size) + "\nNeedle");
+        api = new HeadlessAPI(Locale.ENGLISH, document);
+        new FindPlugin().start(api);
+    }
+
+    /**
+     * Finds the term from the start of the document.
+     * @return The start of the highlighted match.
+     */
+    @Benchmark
+    public int find() {
+        api.setCaretPosition(0);
+        api.addUserInput("needle");
+        api.notifyFunctionKeyPress(FIND_KEY);
+        return api.getSelectionStart();
+    }
+
+    /**
+     * Types a character at the start of the document, then finds the term from the start of the document,
+     * so the plugin's normalized copy of the text must be updated before searching.
+     * @return The start of the highlighted match.
+     */
+    @Benchmark
+    public int findAfterEdit() {
+        api.setCaretPosition(0);
+        api.insertText("x");
+        api.flush();
+        api.setCaretPosition(0);
+        api.addUserInput("needle");
+        api.notifyFunctionKeyPress(FIND_KEY);
+        return api.getSelectionStart();
+    }
+}
@@ -0,0 +1,137 @@
+package texteditor.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import texteditor.app.KeymapParser;
+import texteditor.app.ParseException;
+import texteditor.app.controller.KeymapCache;
+import texteditor.app.controller.PerformanceMonitor;
+import texteditor.app.model.CommandRegistry;
+import texteditor.app.model.KeyMapping;
+import texteditor.app.view.KeyPressHandler;
+
+/**
+ * Benchmarks parsing keymap files and dispatching key presses with large numbers of key mappings.
+ * <p>
+ * Dispatch is measured for an ordinary key press that matches no mapping, the most frequent case while
+ * typing, so no API is needed and the handler runs without a live editor. The mappings can also be generated
+ * as key sequences sharing a common first key, to measure advancing into and breaking out of a sequence.
+ *
+ * @author Rohan Khayech
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeymapBenchmark {
+
+    /** The modifier combinations used by the generated mappings. */
+    private static final String[] MODIFIERS = {
+        "ctrl+", "alt+", "shift+alt+", "ctrl+shift+", "ctrl+alt+", "ctrl+shift+alt+"
+    };
+
+    /** The number of key mappings in the keymap file. */
+    @Param({"8", "256", "4096"})
+    public int mappings;
+
+    /** The key combination starting the sequence of every mapping, or empty for single key combinations. */
+    @Param({"", "q "})
+    public String prefix;
+
+    /** The generated keymap file. */
+    private Path keymapFile;
+    /** The key press handler with the mappings loaded. */
+    private KeyPressHandler handler;
+    /** A key press that matches no mapping. */
+    private KeyEvent unmappedKey;
+    /** A key press starting the sequence of every mapping, if they have a prefix. */
+    private KeyEvent prefixKey;
+
+    /**
+     * Writes the keymap file and loads it into the handler.
+     * @throws IOException If the file could not be written.
+     * @throws ParseException If the generated file is invalid.
+     */
+    @Setup
+    public void setUp() throws IOException, ParseException {
+        StringBuilder keymap = new StringBuilder();
+        for (int i = 0; i < mappings; i++) {
+            String modifiers = MODIFIERS[i % MODIFIERS.length];
+            char letter = (char) ('a' + (i / MODIFIERS.length) % 26);
+            String action = i % 2 == 0 ? "insert" : "delete";
+            String position = i % 3 == 0 ? "start of line" : "caret";
+            keymap.append(prefix).append(modifiers).append(letter).append(" = ").append(action)
+                .append(" \"/*").append(i).append("*/\" at ").append(position).append('\n');
+        }
+        keymapFile = Files.createTempFile("keymap", null);
+        Files.writeString(keymapFile, keymap);
+
+        handler = new KeyPressHandler(null, new CommandRegistry(), new PerformanceMonitor());
+        handler.loadKeyMappings(keymapFile.toString());
+        unmappedKey = new KeyEvent(KeyEvent.KEY_PRESSED, "x", "x", KeyCode.X, false, false, false, false);
+        prefixKey = new KeyEvent(KeyEvent.KEY_PRESSED, "q", "q", KeyCode.Q, false, false, false, false);
+    }
+
+    /**
+     * Deletes the keymap file and its cache.
+     * @throws IOException If the files could not be deleted.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(keymapFile);
+        Files.deleteIfExists(Path.of(keymapFile + KeymapCache.CACHE_EXTENSION));
+    }
+
+    /**
+     * Parses the keymap file.
+     * @return The parsed key mappings.
+     * @throws IOException If the file could not be read.
+     * @throws ParseException If the file is invalid.
+     */
+    @Benchmark
+    public List<KeyMapping> parse() throws IOException, ParseException {
+        return KeymapParser.parse(keymapFile.toString());
+    }
+
+    /**
+     * Loads the keymap file from its binary cache, which is written when the file is loaded during setup.
+     * @return The cached key mappings.
+     * @throws IOException If the file could not be read.
+     * @throws ParseException If the file is invalid.
+     */
+    @Benchmark
+    public List<KeyMapping> loadCached() throws IOException, ParseException {
+        return KeymapCache.load(keymapFile.toString());
+    }
+
+    /**
+     * Dispatches a key press that matches no mapping.
+     */
+    @Benchmark
+    public void dispatchUnmappedKey() {
+        handler.handleKeyEvent(unmappedKey);
+    }
+
+    /**
+     * Dispatches the first key of the mappings' sequences, followed by a key press that breaks the sequence.
+     */
+    @Benchmark
+    public void dispatchBrokenSequence() {
+        handler.handleKeyEvent(prefixKey);
+        handler.handleKeyEvent(unmappedKey);
+    }
+}
@@ -0,0 +1,42 @@
+package texteditor.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates reproducible text for benchmarks.
+ *
+ * @author Rohan Khayech
+ */
+public final class Texts {
+
+    /** Words the generated text is made of, including some non-Latin-1 text. */
+    private static final String[] WORDS = {
+        "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "editor", "plugin",
+        "caf\u00e9", "na\u00efve", "\u03bb", "\u65e5\u672c\u8a9e", "int", "return", "{", "}", ";", "//"
+    };
+
+    /** Not instantiable. */
+    private Texts() {}
+
+    /**
+     * Generates text of the specified length, made of lines of about 60 characters.
+     * The same text is generated for the same length.
+     * @param length The number of characters to generate.
+     * @return The generated text.
+     */
+    public static String generate(int length) {
+        Random random = new Random(length);
+        StringBuilder text = new StringBuilder(length + 16);
+        int lineStart = 0;
+        while (text.length() < length) {
+            if (text.length() - lineStart > 60) {
+                text.append('\n');
+                lineStart = text.length();
+            } else {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+}
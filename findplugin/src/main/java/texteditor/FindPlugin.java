@@ -1,15 +1,16 @@
 package texteditor;
 
-import java.text.Normalizer;
 import java.util.Locale;
 import java.util.ResourceBundle;
 
 import texteditor.api.API;
 import texteditor.api.Plugin;
+import texteditor.api.TextChange;
 
 /**
- * The find plugin creates a new button labelled "Find". When pressed, or when
- * the F3 key is pressed, the plugin finds and highlights the user specified string in the edited text.
+ * The find plugin creates a new button labelled "Find", and a "find" command bound to the F3 key.
+ * When the button or a key bound to the command is pressed, the plugin finds and highlights the user specified string in the edited text.
+ * The text is searched through a normalized copy, which is built on the first search and kept up to date from each change to the text.
  * 
  * @author Rohan Khayech
  */
@@ -18,12 +19,17 @@ public class FindPlugin extends Plugin {
     /** Plugin display name. */
     public static final String NAME = "Find";
 
+    /** The name of the find command. */
+    public static final String FIND_COMMAND = "find";
+
     /** API endpoint. */
     private API api;
     /** The current locale. */
     private Locale locale;
     /** The resource bundle containing the application's localised strings. */
     private ResourceBundle bundle;
+    /** Normalized copy of the edited text, or {@code null} if not built yet. */
+    private SearchIndex index;
 
     /** Constructs a new FindPlugin object. */
     public FindPlugin() {}
@@ -43,11 +49,15 @@ public class FindPlugin extends Plugin {
             findString();
         });
         
-        // Add function key shortcut
-        api.registerFunctionKeyCallback(keyNum ->{
-            if (keyNum == 3) {
-                findString();
-            }
+        // Add find command, bound to F3 by default
+        api.registerCommand(FIND_COMMAND, ()->{
+            findString();
+        });
+        api.bindFunctionKey(3, FIND_COMMAND);
+
+        // Keep the normalized copy up to date
+        api.registerChangeCallback(change->{
+            updateIndex(change);
         });
     }
 
@@ -67,16 +77,31 @@ public class FindPlugin extends Plugin {
         // Get search term by user
         String term = api.getUserInput(bundle.getString("find"),bundle.getString("find_prompt"));
         if (term != null) {
-            String text = api.getAfter();
-
-            // Normalize terms
-            term = Normalizer.normalize(term.toLowerCase(), Normalizer.Form.NFKC);
-            text = Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFKC);
+            // Rebuild the normalized copy if changes to the text have not been delivered to it yet.
+            if (index == null || index.getVersion() != api.getVersion()) {
+                index = new SearchIndex(api.getText(), api.getVersion(), locale);
+            }
 
             // Find term in text and highlight if exists.
-            int index = text.indexOf(term);
-            if (index != -1) {
-                api.highlightText(api.getCaretPosition()+index,api.getCaretPosition()+index+term.length());
+            int[] match = index.find(term, api.getCaretPosition());
+            if (match != null) {
+                api.highlightText(match[0],match[1]);
+            }
+        }
+    }
+
+    /**
+     * Updates the normalized copy of the edited text with a change to the text.
+     * Changes already included in the copy are skipped, and the copy is discarded if a change is missing
+     * or too long to apply, such as opening another file, in which case it is rebuilt by the next search.
+     * @param change The change to the edited text.
+     */
+    private void updateIndex(TextChange change) {
+        if (index != null && change.getVersion() > index.getVersion()) {
+            try {
+                index.apply(change);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) { // Rebuilt on the next search.
+                index = null;
             }
         }
     }
@@ -0,0 +1,329 @@
+package texteditor;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import texteditor.api.TextChange;
+
+/**
+ * Case-folded, NFKC normalized shadow copy of the edited text, with a map from each normalized character
+ * back to the characters of the edited text it came from.
+ * <p>
+ * The copy is split into blocks of whole lines, and is updated from the changes to the edited text by
+ * normalizing only the blocks they touch, so the text does not have to be read and normalized again for
+ * every search. Normalization can change the length of the text, so each normalized character records the
+ * range of original characters it was produced from, and matches are highlighted at those positions.
+ * Blocks whose normalized text has the same length as the original store no map, as their characters map
+ * to themselves.
+ * <p>
+ * The index is not thread-safe, and is used by the plugin's callbacks, which are run one at a time.
+ *
+ * @author Rohan Khayech
+ */
+public class SearchIndex {
+
+    /** The longest change applied to the index, beyond which the index should be rebuilt when next needed. */
+    public static final int MAX_CHANGE_LENGTH = 32768;
+
+    /** The number of characters after which a block is ended at the next line break. */
+    private static final int BLOCK_SIZE = 8192;
+
+    /**
+     * A block of whole lines of the edited text and its normalized copy.
+     */
+    private static class Block {
+        /** The original text of the block, including its line breaks. */
+        private final String text;
+        /** The normalized text of the block. */
+        private final String folded;
+        /** The start of the original characters each normalized character came from, or {@code null} if the same. */
+        private final int[] starts;
+        /** The end of the original characters each normalized character came from, or {@code null} if the same. */
+        private final int[] ends;
+
+        /**
+         * Constructs a new block, normalizing its text.
+         * @param text The original text of the block, including its line breaks.
+         * @param locale The locale whose case rules are used.
+         */
+        private Block(String text, Locale locale) {
+            this.text = text;
+            if (isAscii(text)) {
+                String lowerCase = text.toLowerCase(locale);
+                if (lowerCase.length() == text.length()) {
+                    folded = lowerCase;
+                    starts = null;
+                    ends = null;
+                    return;
+                }
+            }
+
+            // Normalize each character along with any marks that may combine with it.
+            StringBuilder folded = new StringBuilder(text.length());
+            int[] starts = new int[text.length()];
+            int[] ends = new int[text.length()];
+            int start = 0;
+            while (start < text.length()) {
+                int end = start + Character.charCount(text.codePointAt(start));
+                while (end < text.length() && !isBoundary(text.codePointAt(end))) {
+                    end += Character.charCount(text.codePointAt(end));
+                }
+
+                // ASCII characters other than I, which some locales lower-case to a non-ASCII character, fold on their own.
+                char c = text.charAt(start);
+                String segment = end == start + 1 && c < 0x80 && c != 'I'
+                        ? null : fold(text.substring(start, end), locale);
+                int length = segment == null ? 1 : segment.length();
+                if (folded.length() + length > starts.length) {
+                    int capacity = Math.max(starts.length * 2, folded.length() + length);
+                    starts = Arrays.copyOf(starts, capacity);
+                    ends = Arrays.copyOf(ends, capacity);
+                }
+                for (int i = 0; i < length; i++) {
+                    starts[folded.length() + i] = start;
+                    ends[folded.length() + i] = end;
+                }
+                if (segment == null) {
+                    folded.append(Character.toLowerCase(c));
+                } else {
+                    folded.append(segment);
+                }
+                start = end;
+            }
+            this.folded = folded.toString();
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        /**
+         * Returns the index of the first normalized character produced at or after an original position.
+         * @param pos The position within the original text of the block.
+         * @return The index within the normalized text.
+         */
+        private int toFolded(int pos) {
+            if (starts == null) {
+                return pos;
+            }
+            int index = Arrays.binarySearch(starts, 0, folded.length(), pos);
+            if (index < 0) {
+                return -index - 1;
+            }
+            // Find the first character produced by the segment.
+            while (index > 0 && starts[index - 1] == pos) {
+                index--;
+            }
+            return index;
+        }
+
+        /**
+         * @param index The index within the normalized text.
+         * @return The start of the original characters the normalized character came from.
+         */
+        private int getStart(int index) {
+            return starts == null ? index : starts[index];
+        }
+
+        /**
+         * @param index The index within the normalized text.
+         * @return The end of the original characters the normalized character came from.
+         */
+        private int getEnd(int index) {
+            return ends == null ? index + 1 : ends[index];
+        }
+    }
+
+    /** The locale whose case rules are used. */
+    private final Locale locale;
+    /** The blocks of the edited text, none of which are empty unless the text is. */
+    private final List<Block> blocks = new ArrayList<>();
+    /** The position of the start of each block, which are only valid up to {@link #validStarts}. */
+    private int[] blockStarts = new int[1];
+    /** The number of blocks whose start position is known. */
+    private int validStarts = 1;
+    /** The version of the edited text the index is up to date with. */
+    private long version;
+
+    /**
+     * Constructs a new index of the specified text.
+     * @param text The edited text.
+     * @param version The version of the edited text.
+     * @param locale The locale whose case rules are used.
+     */
+    public SearchIndex(CharSequence text, long version, Locale locale) {
+        this.locale = locale;
+        this.version = version;
+        blocks.addAll(split(text.toString()));
+    }
+
+    /**
+     * @return The version of the edited text the index is up to date with.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Updates the index with a change to the edited text, renormalizing the blocks it touches.
+     * Changes removing or inserting more than {@link #MAX_CHANGE_LENGTH} characters, such as replacing
+     * the whole text, are rejected without reading the inserted text, as rebuilding the index only when
+     * it is next searched is cheaper than normalizing them eagerly.
+     * @param change The change, which must be the next change after the version the index is up to date with.
+     * @throws IllegalArgumentException If the change is not the next change, or is too long.
+     * @throws IndexOutOfBoundsException If the change is not within the text.
+     */
+    public void apply(TextChange change) {
+        if (change.getVersion() != version + 1) {
+            throw new IllegalArgumentException("Change to version " + change.getVersion() + " does not follow version " + version);
+        }
+        if (change.getRemovedLength() > MAX_CHANGE_LENGTH || change.getInsertedLength() > MAX_CHANGE_LENGTH) {
+            throw new IllegalArgumentException("Change of " + Math.max(change.getRemovedLength(), change.getInsertedLength()) + " characters is too long");
+        }
+        int offset = change.getOffset();
+        int end = offset + change.getRemovedLength();
+        int first = getBlockOfOffset(offset);
+        int last = getBlockOfOffset(end);
+
+        // Rebuild the touched blocks from the text around the change.
+        String before = blocks.get(first).text.substring(0, offset - getBlockStart(first));
+        String after = blocks.get(last).text.substring(end - getBlockStart(last));
+        String text = before + change.getInsertedText() + after;
+        List<Block> replaced = blocks.subList(first, last + 1);
+        replaced.clear();
+        if (!text.isEmpty() || blocks.isEmpty()) {
+            replaced.addAll(split(text));
+        }
+
+        validStarts = Math.min(validStarts, first + 1);
+        version = change.getVersion();
+    }
+
+    /**
+     * Finds the first occurrence of a term at or after the specified position, ignoring case and
+     * compatibility differences between characters. Terms containing a line break are not found.
+     * @param term The term to find.
+     * @param from The position to search from.
+     * @return The start and end positions of the original characters matched, or {@code null} if not found.
+     * @throws IndexOutOfBoundsException If the position is not within the text.
+     */
+    public int[] find(String term, int from) {
+        // Normalize the term in the same way as the text, so they can be compared.
+        String folded = new Block(term, locale).folded;
+        if (folded.isEmpty() || folded.indexOf('\n') != -1) {
+            return null;
+        }
+
+        // Matches cannot span blocks, as blocks end at line breaks.
+        int first = getBlockOfOffset(from);
+        int index = blocks.get(first).toFolded(from - getBlockStart(first));
+        for (int i = first; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            int match = block.folded.indexOf(folded, i == first ? index : 0);
+            if (match != -1) {
+                int blockStart = getBlockStart(i);
+                return new int[] { blockStart + block.getStart(match), blockStart + block.getEnd(match + folded.length() - 1) };
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the block containing the specified position. A position at the boundary of two blocks is in the second.
+     * @param offset The position within the edited text.
+     * @return The index of the block.
+     * @throws IndexOutOfBoundsException If the position is not within the edited text.
+     */
+    private int getBlockOfOffset(int offset) {
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException(offset);
+        }
+        // Compute the start of the following blocks until one starts after the position.
+        while (validStarts < blocks.size() && blockStarts[validStarts - 1] <= offset) {
+            getBlockStart(validStarts);
+        }
+        int index = Arrays.binarySearch(blockStarts, 0, validStarts, offset);
+        int block = index >= 0 ? index : -index - 2;
+        if (offset > blockStarts[block] + blocks.get(block).text.length()) {
+            throw new IndexOutOfBoundsException(offset);
+        }
+        return block;
+    }
+
+    /**
+     * Returns the position of the start of the specified block, computing the start of the blocks before it if needed.
+     * @param block The index of the block.
+     * @return The position of the first character of the block.
+     */
+    private int getBlockStart(int block) {
+        if (block >= blockStarts.length) {
+            blockStarts = Arrays.copyOf(blockStarts, Math.max(blockStarts.length * 2, block + 1));
+        }
+        for (; validStarts <= block; validStarts++) {
+            blockStarts[validStarts] = blockStarts[validStarts - 1] + blocks.get(validStarts - 1).text.length();
+        }
+        return blockStarts[block];
+    }
+
+    /**
+     * Splits text into normalized blocks, each ending at the first line break after {@link #BLOCK_SIZE} characters.
+     * @param text The text to split.
+     * @return The blocks of the text.
+     */
+    private List<Block> split(String text) {
+        List<Block> split = new ArrayList<>();
+        int start = 0;
+        int end;
+        while (text.length() - start > BLOCK_SIZE && (end = text.indexOf('\n', start + BLOCK_SIZE - 1)) != -1) {
+            split.add(new Block(text.substring(start, end + 1), locale));
+            start = end + 1;
+        }
+        if (start < text.length() || split.isEmpty()) {
+            split.add(new Block(text.substring(start), locale));
+        }
+        return split;
+    }
+
+    /**
+     * Normalizes text to the form it is compared in.
+     * @param text The text to normalize.
+     * @param locale The locale whose case rules are used.
+     * @return The case-folded, NFKC normalized text.
+     */
+    private static String fold(String text, Locale locale) {
+        return Normalizer.normalize(text.toLowerCase(locale), Normalizer.Form.NFKC).toLowerCase(locale);
+    }
+
+    /**
+     * Checks whether a character can start a separately normalized segment, because it cannot combine
+     * with the characters before it.
+     * @param codePoint The character.
+     * @return {@code true} if the character starts a segment, {@code false} otherwise.
+     */
+    private static boolean isBoundary(int codePoint) {
+        if (codePoint < 0x300) {
+            return true;
+        }
+        // Check the first character the character decomposes to, eg. halfwidth voiced marks decompose to combining marks.
+        String decomposed = Normalizer.normalize(new String(Character.toChars(codePoint)), Normalizer.Form.NFKD);
+        int first = decomposed.codePointAt(0);
+        int type = Character.getType(first);
+        boolean jamo = (first >= 0x1160 && first < 0x1200) || (first >= 0xD7B0 && first < 0xD800);
+        return type != Character.NON_SPACING_MARK && type != Character.ENCLOSING_MARK
+                && type != Character.COMBINING_SPACING_MARK && !jamo;
+    }
+
+    /**
+     * @param text The text to check.
+     * @return {@code true} if the text only contains ASCII characters, {@code false} otherwise.
+     */
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
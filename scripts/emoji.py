@@ -5,20 +5,23 @@ Author:
     Rohan Khayech
 """
 
-from texteditor.api import ModifyEventHandler
+from texteditor.api import ChangeEventHandler
 
 # Report script name
 script.setName("Emoji")
 
-class EmojiModifyEventHandler(ModifyEventHandler):
+class EmojiChangeEventHandler(ChangeEventHandler):
     """
-    Text modification event handler for the emoji script.
+    Text change event handler for the emoji script.
     """
-    def onTextModified(self):
+    def onTextChanged(self, change):
         """
-        Called when the edited text is modified by the user.
+        Called for each change to the edited text.
+        Only changes inserting a ")" can complete an emoji, so other changes are ignored without reading the text.
         """
-        replaceEmoji()
+        end = change.getOffset() + change.getInsertedLength()
+        if (change.getVersion() == api.getVersion() and change.getInsertedLength() > 0 and api.charAt(end-1) == ")"):
+            replaceEmoji()
         
 
 def replaceEmoji():
@@ -26,12 +29,13 @@ def replaceEmoji():
     Replaces ":-)" immediately prior to the caret with the smile emoji.
     """
     try:
-        text = api.getBefore(3)
-        if (text == ":-)"):
+        # Look behind the caret one character at a time, to avoid copying the text.
+        caret = api.getCaretPosition()
+        if (caret >= 3 and api.charAt(caret-1) == ")" and api.charAt(caret-2) == "-" and api.charAt(caret-3) == ":"):
             api.replaceText(u"\U0001f60a", 3)
     except ValueError:
         pass # Ignore errors with unpaired surrogates, this script is only concerned with basic ASCII characters.
         
 
 # Register the event handeler
-api.registerModifyCallback(EmojiModifyEventHandler())
+api.registerChangeCallback(EmojiChangeEventHandler())